@@ -0,0 +1,46 @@
+package tc.oc.protobuf.packet.benchmarks;
+
+import com.google.protobuf.Descriptors.Descriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+import tc.oc.protobuf.packet.util.DescriptorUtil;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link DescriptorUtil}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DescriptorBenchmark {
+    private Method method;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        this.method = Fixtures.Listener.class.getMethod("handle", TestExtendingMessage.ExtendingMessage.class);
+    }
+
+    @Benchmark
+    public Descriptor getDescriptorOfMethod() {
+        return DescriptorUtil.getDescriptor(this.method);
+    }
+
+    @Benchmark
+    public Descriptor getDescriptorOfClass() {
+        return DescriptorUtil.getDescriptor(TestExtendingMessage.ExtendingMessage.class);
+    }
+}
@@ -0,0 +1,99 @@
+package tc.oc.protobuf.packet.benchmarks;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistry;
+import tc.oc.protobuf.packet.Handler;
+import tc.oc.protobuf.packet.MessageListener;
+import tc.oc.protobuf.packet.base.SimplePacketManager;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+import tc.oc.protobuf.packet.protocols.TestGenericMessage;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Messages and listeners shared by the benchmarks.
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    /**
+     * Creates a {@link SimplePacketManager} for {@link TestGenericMessage.GenericMessage}s.
+     *
+     * @return The packet manager.
+     */
+    @Nonnull
+    static SimplePacketManager<TestGenericMessage.GenericMessage> packetManager() {
+        ExtensionRegistry registry = ExtensionRegistry.newInstance();
+        TestExtendingMessage.registerAllExtensions(registry);
+        return new SimplePacketManager<>(TestGenericMessage.GenericMessage.getDefaultInstance(), registry);
+    }
+
+    /**
+     * Creates an extension message.
+     *
+     * @param value The extension's value.
+     * @return The extension.
+     */
+    @Nonnull
+    static TestExtendingMessage.ExtendingMessage extension(int value) {
+        return TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(value).build();
+    }
+
+    /**
+     * Creates a packet carrying an extension and an unhandled payload of the specified size.
+     *
+     * @param payloadSize The number of bytes of payload, which is carried by a field that is not an extension.
+     * @return The packet.
+     */
+    @Nonnull
+    static TestGenericMessage.GenericMessage packet(int payloadSize) {
+        return TestGenericMessage.GenericMessage.newBuilder()
+                .addByteSequenceValue(ByteString.copyFrom(new byte[payloadSize]))
+                .setExtension(TestExtendingMessage.ExtendingMessage.extendingMessage, extension(payloadSize))
+                .build();
+    }
+
+    /**
+     * Serializes a packet carrying the specified number of extensions and an unhandled payload of the specified size.
+     * The test protocol has a single extension, so each extension after the first is another occurrence of it, which
+     * serialized parsing handles once per occurrence.
+     *
+     * @param extensions  The number of extensions.
+     * @param payloadSize The number of bytes of payload.
+     * @return The serialized packet.
+     */
+    @Nonnull
+    static byte[] serialized(int extensions, int payloadSize) {
+        byte[] packet = packet(payloadSize).toByteArray();
+        TestExtendingMessage.ExtendingMessage extension = extension(extensions);
+        int fieldNumber = TestExtendingMessage.ExtendingMessage.extendingMessage.getDescriptor().getNumber();
+        int extensionSize = CodedOutputStream.computeMessageSize(fieldNumber, extension);
+        byte[] serialized = new byte[packet.length + (extensions - 1) * extensionSize];
+        System.arraycopy(packet, 0, serialized, 0, packet.length);
+        CodedOutputStream output = CodedOutputStream.newInstance(serialized, packet.length, serialized.length - packet.length);
+        try {
+            for (int i = 1; i < extensions; i++) {
+                output.writeMessage(fieldNumber, extension);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Serializing to a byte array threw an IOException (should never happen).", e);
+        }
+        output.checkNoSpaceLeft();
+        return serialized;
+    }
+
+    /**
+     * Listener with a single {@link Handler}.
+     */
+    public static class Listener implements MessageListener {
+        public long sum;
+
+        @Handler
+        public void handle(TestExtendingMessage.ExtendingMessage message) {
+            this.sum += message.getNumericalValue();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package tc.oc.protobuf.packet.benchmarks;
+
+import com.google.protobuf.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tc.oc.protobuf.packet.HandlerException;
+import tc.oc.protobuf.packet.MessageHandler;
+import tc.oc.protobuf.packet.base.LambdaMessageExecutor;
+import tc.oc.protobuf.packet.base.MethodMessageExecutor;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of invoking a single handler through {@link MethodMessageExecutor} and {@link LambdaMessageExecutor},
+ * compared to a hand-written {@link MessageHandler}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokerBenchmark {
+    private Fixtures.Listener listener;
+    private MessageHandler executor;
+    private MessageHandler lambda;
+    private MessageHandler direct;
+    private Message message;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        this.listener = new Fixtures.Listener();
+        this.executor = new MethodMessageExecutor(this.listener, Fixtures.Listener.class.getMethod("handle", TestExtendingMessage.ExtendingMessage.class));
+        this.lambda = LambdaMessageExecutor.FACTORY.create(this.listener, Fixtures.Listener.class.getMethod("handle", TestExtendingMessage.ExtendingMessage.class));
+        final Fixtures.Listener listener = this.listener;
+        this.direct = new MessageHandler() {
+            @Override
+            public void handle(Message msg) throws HandlerException {
+                listener.handle((TestExtendingMessage.ExtendingMessage) msg);
+            }
+        };
+        this.message = Fixtures.extension(1);
+    }
+
+    @Benchmark
+    public long methodMessageExecutor() throws HandlerException {
+        this.executor.handle(this.message);
+        return this.listener.sum;
+    }
+
+    @Benchmark
+    public long lambdaMessageExecutor() throws HandlerException {
+        this.lambda.handle(this.message);
+        return this.listener.sum;
+    }
+
+    @Benchmark
+    public long handWritten() throws HandlerException {
+        this.direct.handle(this.message);
+        return this.listener.sum;
+    }
+}
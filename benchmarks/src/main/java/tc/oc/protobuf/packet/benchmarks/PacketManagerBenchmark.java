@@ -0,0 +1,121 @@
+package tc.oc.protobuf.packet.benchmarks;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tc.oc.protobuf.packet.PacketTemplate;
+import tc.oc.protobuf.packet.base.SimpleMessageHandlerRegistry;
+import tc.oc.protobuf.packet.base.SimplePacketManager;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+import tc.oc.protobuf.packet.protocols.TestGenericMessage;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of parsing and building packets with {@link SimplePacketManager}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketManagerBenchmark {
+    /**
+     * The number of handlers registered for the extension.
+     */
+    @Param({"1", "4"})
+    public int handlers;
+    /**
+     * The number of extensions in a serialized packet.
+     */
+    @Param({"1", "8"})
+    public int extensions;
+    /**
+     * The number of bytes of unhandled payload in a packet.
+     */
+    @Param({"0", "64", "1024"})
+    public int payloadSize;
+
+    private SimplePacketManager<TestGenericMessage.GenericMessage> packetManager;
+    private SimpleMessageHandlerRegistry registry;
+    private SimpleMessageHandlerRegistry emptyRegistry;
+    private TestGenericMessage.GenericMessage packet;
+    private byte[] serialized;
+    private TestExtendingMessage.ExtendingMessage extension;
+    private PacketTemplate<TestGenericMessage.GenericMessage, TestExtendingMessage.ExtendingMessage> template;
+    private byte[] output;
+
+    @Setup
+    public void setup() {
+        this.packetManager = Fixtures.packetManager();
+        this.registry = new SimpleMessageHandlerRegistry();
+        for (int i = 0; i < this.handlers; i++) {
+            this.registry.registerAll(new Fixtures.Listener());
+        }
+        this.emptyRegistry = new SimpleMessageHandlerRegistry();
+        this.packet = Fixtures.packet(this.payloadSize);
+        this.serialized = Fixtures.serialized(this.extensions, this.payloadSize);
+        this.extension = Fixtures.extension(this.payloadSize);
+        this.template = this.packetManager.template(TestExtendingMessage.ExtendingMessage.class);
+        this.output = new byte[this.packetManager.getSerializedSize(this.extension)];
+    }
+
+    @Benchmark
+    public int parseMessage() {
+        return this.packetManager.parse(this.packet, this.registry);
+    }
+
+    @Benchmark
+    public int parseSerialized() throws IOException {
+        return this.packetManager.parse(this.serialized, 0, this.serialized.length, this.registry);
+    }
+
+    /**
+     * Parses a serialized packet whose extensions have no handlers, which skips them without decoding.
+     *
+     * @return The number of extensions handled.
+     * @throws IOException If the packet is malformed.
+     */
+    @Benchmark
+    public int parseSerializedUnhandled() throws IOException {
+        return this.packetManager.parse(this.serialized, 0, this.serialized.length, this.emptyRegistry);
+    }
+
+    @Benchmark
+    public Message build() {
+        return this.packetManager.build(this.extension);
+    }
+
+    @Benchmark
+    public Message buildVarargs() {
+        return this.packetManager.build(new Message[]{this.extension});
+    }
+
+    @Benchmark
+    public Message buildTemplate() {
+        return this.template.build(this.extension);
+    }
+
+    @Benchmark
+    public byte[] buildAndSerialize() {
+        return this.packetManager.build(this.extension).toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeTo() throws IOException {
+        this.packetManager.writeTo(CodedOutputStream.newInstance(this.output), this.extension);
+        return this.output;
+    }
+}
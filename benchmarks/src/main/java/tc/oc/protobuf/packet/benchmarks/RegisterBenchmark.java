@@ -0,0 +1,71 @@
+package tc.oc.protobuf.packet.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tc.oc.protobuf.packet.MessageHandler;
+import tc.oc.protobuf.packet.MessageHandlerFactory;
+import tc.oc.protobuf.packet.MessageListener;
+import tc.oc.protobuf.packet.base.MethodMessageExecutor;
+import tc.oc.protobuf.packet.base.SimpleMessageHandlerRegistry;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of registering and un-registering listeners with {@link SimpleMessageHandlerRegistry}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegisterBenchmark {
+    /**
+     * The number of other listeners already registered for the same message.
+     */
+    @Param({"0", "16", "256"})
+    public int handlers;
+
+    private SimpleMessageHandlerRegistry generatedRegistry;
+    private SimpleMessageHandlerRegistry reflectiveRegistry;
+    private Fixtures.Listener listener;
+
+    @Setup
+    public void setup() {
+        this.generatedRegistry = new SimpleMessageHandlerRegistry();
+        // Any factory other than the default one makes the registry resolve handlers by reflection
+        this.reflectiveRegistry = new SimpleMessageHandlerRegistry(null, new MessageHandlerFactory() {
+            @Override
+            public MessageHandler create(MessageListener listener, Method method) {
+                return MethodMessageExecutor.FACTORY.create(listener, method);
+            }
+        });
+        for (int i = 0; i < this.handlers; i++) {
+            this.generatedRegistry.registerAll(new Fixtures.Listener());
+            this.reflectiveRegistry.registerAll(new Fixtures.Listener());
+        }
+        this.listener = new Fixtures.Listener();
+    }
+
+    @Benchmark
+    public boolean registerAllGenerated() {
+        this.generatedRegistry.registerAll(this.listener);
+        return this.generatedRegistry.unRegisterAll(this.listener);
+    }
+
+    @Benchmark
+    public boolean registerAllReflective() {
+        this.reflectiveRegistry.registerAll(this.listener);
+        return this.reflectiveRegistry.unRegisterAll(this.listener);
+    }
+}
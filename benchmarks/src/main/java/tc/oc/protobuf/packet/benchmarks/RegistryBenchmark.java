@@ -0,0 +1,69 @@
+package tc.oc.protobuf.packet.benchmarks;
+
+import com.google.protobuf.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tc.oc.protobuf.packet.base.SimpleMessageHandlerRegistry;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of dispatching messages with {@link SimpleMessageHandlerRegistry}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryBenchmark {
+    /**
+     * The number of handlers registered for the message.
+     */
+    @Param({"1", "4", "16"})
+    public int handlers;
+    /**
+     * The number of messages handled by {@link #handleAll()}.
+     */
+    @Param({"1", "8", "64"})
+    public int extensions;
+
+    private SimpleMessageHandlerRegistry registry;
+    private TestExtendingMessage.ExtendingMessage message;
+    private List<Message> batch;
+
+    @Setup
+    public void setup() {
+        this.registry = new SimpleMessageHandlerRegistry();
+        for (int i = 0; i < this.handlers; i++) {
+            this.registry.registerAll(new Fixtures.Listener());
+        }
+        this.message = Fixtures.extension(1);
+        this.batch = new ArrayList<>();
+        for (int i = 0; i < this.extensions; i++) {
+            this.batch.add(Fixtures.extension(i));
+        }
+    }
+
+    @Benchmark
+    public int handle() {
+        return this.registry.handle(this.message);
+    }
+
+    @Benchmark
+    public int handleAll() {
+        return this.registry.handleAll(this.batch);
+    }
+}
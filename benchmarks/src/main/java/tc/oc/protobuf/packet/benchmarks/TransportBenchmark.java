@@ -0,0 +1,133 @@
+package tc.oc.protobuf.packet.benchmarks;
+
+import com.google.protobuf.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import tc.oc.protobuf.packet.MessageHandler;
+import tc.oc.protobuf.packet.base.SimpleMessageHandlerRegistry;
+import tc.oc.protobuf.packet.base.SimplePacketManager;
+import tc.oc.protobuf.packet.net.BlockingPacketServer;
+import tc.oc.protobuf.packet.net.PacketConnection;
+import tc.oc.protobuf.packet.net.SelectorPacketServer;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+import tc.oc.protobuf.packet.protocols.TestGenericMessage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmarks of the throughput of a loopback connection to a thread-per-connection {@link BlockingPacketServer},
+ * compared to a single-threaded {@link SelectorPacketServer}, from sending a packet to handling it on the server.
+ * <p/>
+ * The server's threads are either platform threads or, where the JVM supports them, virtual threads. On JVMs without
+ * virtual threads, the {@code virtual} cases fail in their setup and are reported as such, while the other cases still
+ * run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+    /**
+     * The number of packets sent per invocation, before waiting for the server to handle them.
+     */
+    private static final int BATCH = 1000;
+
+    @Param({"blocking", "selector"})
+    public String server;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    private final AtomicLong handled = new AtomicLong();
+    private Closeable serverCloseable;
+    private PacketConnection<TestGenericMessage.GenericMessage> client;
+    private Message message;
+    private long sent;
+
+    @Setup
+    public void setup() throws IOException {
+        ThreadFactory threadFactory = this.threads.equals("virtual") ? virtualThreadFactory() : Executors.defaultThreadFactory();
+        SimplePacketManager<TestGenericMessage.GenericMessage> packetManager = Fixtures.packetManager();
+        SimpleMessageHandlerRegistry registry = new SimpleMessageHandlerRegistry();
+        registry.register(TestExtendingMessage.ExtendingMessage.getDescriptor(), new MessageHandler() {
+            @Override
+            public void handle(Message msg) {
+                handled.incrementAndGet();
+            }
+        });
+        InetSocketAddress address;
+        if (this.server.equals("blocking")) {
+            BlockingPacketServer<TestGenericMessage.GenericMessage> blocking = new BlockingPacketServer<>(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()), packetManager, registry, threadFactory, null);
+            blocking.start();
+            address = new InetSocketAddress(blocking.getServerSocket().getInetAddress(), blocking.getServerSocket().getLocalPort());
+            this.serverCloseable = blocking;
+        } else {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            SelectorPacketServer<TestGenericMessage.GenericMessage> selector = new SelectorPacketServer<>(channel, packetManager, registry, null);
+            selector.start(threadFactory);
+            address = (InetSocketAddress) channel.socket().getLocalSocketAddress();
+            this.serverCloseable = selector;
+        }
+        this.client = new PacketConnection<>(new Socket(address.getAddress(), address.getPort()), packetManager, new SimpleMessageHandlerRegistry(), null);
+        this.message = Fixtures.extension(1);
+    }
+
+    /**
+     * Gets a factory of virtual threads through {@code Thread.ofVirtual().factory()}, which is looked up reflectively
+     * since the benchmarks are compiled for Java 7.
+     *
+     * @return The factory.
+     * @throws UnsupportedOperationException If the JVM does not support virtual threads.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available on this JVM", e);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.client.close();
+        this.serverCloseable.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long sendAndHandle() throws IOException {
+        for (int i = 0; i < BATCH; i++) {
+            this.client.send(this.message);
+        }
+        this.sent += BATCH;
+        while (this.handled.get() < this.sent) {
+            Thread.yield();
+        }
+        return this.sent;
+    }
+}
@@ -0,0 +1,22 @@
+package tc.oc.protobuf.packet;
+
+import com.google.protobuf.Message;
+
+import java.util.List;
+
+/**
+ * {@link MessageHandler} that can handle a batch of messages of the same type in a single call, such as a {@link
+ * Handler} method accepting a {@link List} of messages. Registries pass each group of same-typed messages from {@link
+ * BatchMessageHandlerRegistry#handleAll(List)} to {@link #handleAll(List)} at once; single messages are passed to
+ * {@link #handle(Message)}. Messages received one at a time can be collected into batches by a {@link
+ * tc.oc.protobuf.packet.base.BatchingDispatcher}.
+ */
+public interface BatchMessageHandler extends MessageHandler {
+    /**
+     * Handles a batch of messages of the parameter type specified.
+     *
+     * @param msgs The messages to handle, in the order they were received. The list must not be modified or retained.
+     * @throws HandlerException If there was a critical error in handling the messages.
+     */
+    void handleAll(List<? extends Message> msgs) throws HandlerException;
+}
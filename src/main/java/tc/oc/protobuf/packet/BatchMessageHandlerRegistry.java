@@ -0,0 +1,22 @@
+package tc.oc.protobuf.packet;
+
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * {@link MessageHandlerRegistry} that can also handle a batch of messages at once, passing each group of same-typed
+ * messages to its {@link BatchMessageHandler}s in a single call.
+ */
+public interface BatchMessageHandlerRegistry extends MessageHandlerRegistry {
+    /**
+     * Handles a batch of messages. Messages are grouped by type, and the handlers of each type are looked up once per
+     * group; {@link BatchMessageHandler}s receive each group in a single call, while other handlers receive each
+     * message of the group in turn.
+     *
+     * @param msgs The messages to handle.
+     * @return The number of handler invocations, counting each call to a {@link BatchMessageHandler} once.
+     */
+    int handleAll(@Nonnull List<? extends Message> msgs);
+}
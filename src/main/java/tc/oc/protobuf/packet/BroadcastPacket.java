@@ -0,0 +1,91 @@
+package tc.oc.protobuf.packet;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A packet that is serialized once, already framed with its length prefix, so that it can be written to any number of
+ * connections without being encoded again. The frame is immutable and is never copied by this class, so a packet can be
+ * shared freely between threads and writers, such as the write queues of many {@link
+ * tc.oc.protobuf.packet.net.ChannelPacketConnection}s, and is reclaimed by the garbage collector like any other object.
+ */
+public final class BroadcastPacket {
+    @Nonnull
+    private final byte[] frame;
+    private final int length;
+
+    private BroadcastPacket(@Nonnull byte[] frame, int length) {
+        this.frame = frame;
+        this.length = length;
+    }
+
+    /**
+     * Serializes a packet carrying the specified extensions into a new broadcast packet, without building the packet.
+     *
+     * @param packetManager The {@link PacketManager} used to serialize the packet.
+     * @param messages      The messages to be added as extensions.
+     * @return The broadcast packet.
+     * @throws IllegalArgumentException If any message's type is not an extension of the packet manager's base message.
+     */
+    @Nonnull
+    public static BroadcastPacket create(@Nonnull PacketManager<?> packetManager, @Nonnull Message... messages) {
+        Preconditions.checkNotNull(packetManager, "create() got null PacketManager");
+        int length = packetManager.getSerializedSize(messages);
+        byte[] frame = new byte[CodedOutputStream.computeRawVarint32Size(length) + length];
+        CodedOutputStream output = CodedOutputStream.newInstance(frame);
+        try {
+            output.writeRawVarint32(length);
+            packetManager.writeTo(output, messages);
+        } catch (IOException e) {
+            throw new RuntimeException("Serializing to a byte array threw an IOException (should never happen).", e);
+        }
+        output.checkNoSpaceLeft();
+        return new BroadcastPacket(frame, length);
+    }
+
+    /**
+     * Gets the length of the packet, not including its length prefix.
+     *
+     * @return The length of the packet.
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Gets the length of the frame, including its length prefix.
+     *
+     * @return The length of the frame.
+     */
+    public int getFrameLength() {
+        return this.frame.length;
+    }
+
+    /**
+     * Gets a new read-only view of the frame. Each view has its own position, so views can be written to several
+     * channels at once.
+     *
+     * @return The view, positioned at the start of the frame.
+     */
+    @Nonnull
+    public ByteBuffer frame() {
+        return ByteBuffer.wrap(this.frame).asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the frame to the specified output. The output is not flushed.
+     *
+     * @param output The output.
+     * @throws IOException If the frame could not be written.
+     */
+    public void writeTo(@Nonnull OutputStream output) throws IOException {
+        Preconditions.checkNotNull(output, "writeTo() got null OutputStream");
+        output.write(this.frame);
+    }
+}
@@ -0,0 +1,122 @@
+package tc.oc.protobuf.packet;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * The dispatch of a message to its handlers, which handlers can cancel to stop the handlers after them that {@link
+ * Handler#ignoreCancelled() ignore cancelled} messages from being invoked.
+ * <p/>
+ * A handler gets the dispatch it is being invoked by from {@link #current()}. A dispatch covers a single message: each
+ * message of a call to {@link BatchMessageHandlerRegistry#handleAll(java.util.List)} is cancelled separately, except
+ * that a {@link BatchMessageHandler} sees a single dispatch for all of the messages it is passed, and cancelling it
+ * cancels all of them.
+ * <p/>
+ * Each thread reuses its dispatches, so that dispatching a message does not allocate one. A dispatch must therefore not
+ * be kept or used once the handler it was passed to has returned.
+ */
+public final class Dispatch {
+    private static final ThreadLocal<Stack> STACKS = new ThreadLocal<Stack>() {
+        @Override
+        protected Stack initialValue() {
+            return new Stack();
+        }
+    };
+
+    /**
+     * The stack of dispatches of the thread that this dispatch belongs to.
+     */
+    @Nonnull
+    private final Stack stack;
+    /**
+     * The position of this dispatch in {@link #stack}.
+     */
+    private final int depth;
+    private boolean cancelled;
+
+    private Dispatch(@Nonnull Stack stack, int depth) {
+        this.stack = stack;
+        this.depth = depth;
+    }
+
+    /**
+     * Gets the dispatch whose handler is being invoked on this thread.
+     *
+     * @return The current dispatch.
+     * @throws IllegalStateException If no message is being dispatched on this thread.
+     */
+    @Nonnull
+    public static Dispatch current() {
+        Stack stack = STACKS.get();
+        Preconditions.checkState(stack.size > 0, "No message is being dispatched on this thread");
+        return stack.dispatches[stack.size - 1];
+    }
+
+    /**
+     * Begins a new, uncancelled dispatch on this thread, which becomes the {@link #current()} dispatch until it {@link
+     * #end()}s. Used by {@link MessageHandlerRegistry} implementations; dispatches may be nested.
+     *
+     * @return The new dispatch.
+     */
+    @Nonnull
+    public static Dispatch begin() {
+        Stack stack = STACKS.get();
+        if (stack.size == stack.dispatches.length) {
+            stack.dispatches = Arrays.copyOf(stack.dispatches, stack.size * 2);
+        }
+        Dispatch dispatch = stack.dispatches[stack.size];
+        if (dispatch == null) {
+            dispatch = new Dispatch(stack, stack.size);
+            stack.dispatches[stack.size] = dispatch;
+        }
+        dispatch.cancelled = false;
+        stack.size++;
+        return dispatch;
+    }
+
+    /**
+     * Ends this dispatch, restoring the dispatch that was current when it began. Called from {@code finally} blocks, so
+     * it never throws: any dispatches begun after this one that were not ended are ended with it, and ending a dispatch
+     * that has already ended, or from another thread, does nothing. Either imbalance fails an assertion when assertions
+     * are enabled.
+     */
+    public void end() {
+        assert this.stack.thread == Thread.currentThread() && this.stack.size == this.depth + 1 : "Dispatch is not the current dispatch of this thread";
+        if (this.stack.thread == Thread.currentThread() && this.stack.size > this.depth) {
+            this.stack.size = this.depth;
+        }
+    }
+
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Sets whether the dispatch is cancelled. The handlers invoked after this one that ignore cancelled messages are
+     * skipped while it is cancelled.
+     *
+     * @param cancelled Whether the dispatch is cancelled.
+     */
+    public void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * The dispatches of a thread, the last of which is current.
+     */
+    private static final class Stack {
+        @Nonnull
+        final Thread thread = Thread.currentThread();
+        /**
+         * The thread's dispatches, which are created as deeper nesting is first needed and reused afterwards.
+         */
+        @Nonnull
+        Dispatch[] dispatches = new Dispatch[4];
+        /**
+         * The number of dispatches in {@link #dispatches} that have begun and not yet ended.
+         */
+        int size;
+    }
+}
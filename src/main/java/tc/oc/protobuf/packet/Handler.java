@@ -12,4 +12,27 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Handler {
+    /**
+     * Whether the handler must always be invoked on the thread handling the message, even by registries that otherwise
+     * dispatch handlers asynchronously, such as {@link tc.oc.protobuf.packet.base.AsyncMessageHandlerRegistry}.
+     *
+     * @return Whether the handler must be invoked inline.
+     */
+    boolean inline() default false;
+
+    /**
+     * The priority of the handler, which decides when it is invoked relative to the other handlers of the same message.
+     * The order is fixed when the handler is registered, so dispatching a message never sorts its handlers.
+     *
+     * @return The priority of the handler.
+     */
+    HandlerPriority priority() default HandlerPriority.NORMAL;
+
+    /**
+     * Whether the handler is skipped if an earlier handler {@link Dispatch#setCancelled(boolean) cancelled} the
+     * dispatch of the message.
+     *
+     * @return Whether the handler ignores cancelled messages.
+     */
+    boolean ignoreCancelled() default false;
 }
@@ -0,0 +1,24 @@
+package tc.oc.protobuf.packet;
+
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Receives the exceptions thrown by handlers from {@link MessageHandlerRegistry}s that support it.
+ * <p/>
+ * Reporters are called inline on the threads that handle messages, possibly many at once, so implementations must be
+ * thread-safe and should defer any expensive work, such as formatting the messages, until it is known to be needed.
+ */
+public interface HandlerErrorReporter {
+    /**
+     * Reports that a handler threw an exception.
+     *
+     * @param handler   The handler that failed.
+     * @param messages  The messages being handled: a single message, or the batch passed to a {@link
+     *                  BatchMessageHandler}.
+     * @param exception The exception thrown by the handler.
+     */
+    void handlerFailed(@Nonnull MessageHandler handler, @Nonnull List<? extends Message> messages, @Nonnull HandlerException exception);
+}
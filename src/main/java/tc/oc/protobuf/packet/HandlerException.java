@@ -21,4 +21,22 @@ public class HandlerException extends Exception {
     public HandlerException(Throwable cause) {
         super(cause);
     }
+
+    protected HandlerException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+
+    /**
+     * Wraps an exception thrown by a {@link Handler} method. The wrapper does not fill in its own stack trace, which
+     * would only repeat the dispatch frames already in the cause's stack trace, so that failing handlers stay cheap.
+     *
+     * @param cause The exception thrown by the handler.
+     * @return The cause itself if it is already a HandlerException, or a new stackless HandlerException caused by it.
+     */
+    public static HandlerException wrap(Throwable cause) {
+        if (cause instanceof HandlerException) {
+            return (HandlerException) cause;
+        }
+        return new HandlerException(String.valueOf(cause), cause, false, false);
+    }
 }
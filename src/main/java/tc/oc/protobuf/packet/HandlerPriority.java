@@ -0,0 +1,28 @@
+package tc.oc.protobuf.packet;
+
+/**
+ * The priority of a {@link Handler}, which decides the order in which the handlers of a message are invoked. Handlers
+ * are invoked from {@link #LOWEST} to {@link #MONITOR}, so that higher priority handlers have the final say over the
+ * outcome of a message; handlers of the same priority are invoked in the order they were registered.
+ */
+public enum HandlerPriority {
+    /**
+     * Invoked first.
+     */
+    LOWEST,
+    LOW,
+    /**
+     * The default priority.
+     */
+    NORMAL,
+    HIGH,
+    /**
+     * Invoked last among the handlers that may change the outcome of a message.
+     */
+    HIGHEST,
+    /**
+     * Invoked after every other handler, to observe the outcome of a message. Monitoring handlers should not {@link
+     * Dispatch#setCancelled(boolean) cancel} the dispatch.
+     */
+    MONITOR
+}
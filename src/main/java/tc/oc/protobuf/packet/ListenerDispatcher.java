@@ -0,0 +1,31 @@
+package tc.oc.protobuf.packet;
+
+import com.google.common.collect.Multimap;
+import com.google.protobuf.Descriptors.Descriptor;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Creates the {@link MessageHandler}s for the {@link Handler}s of a specific {@link MessageListener} class without
+ * reflection.
+ * <p/>
+ * Implementations are generated at compile time by {@link tc.oc.protobuf.packet.processor.HandlerProcessor}, named
+ * after the listener's binary name with {@link #CLASS_SUFFIX} appended, and are used by {@link
+ * MessageHandlerRegistry#registerAll(MessageListener)} in place of scanning the listener's methods when present.
+ *
+ * @param <L> The type of {@link MessageListener}.
+ */
+public interface ListenerDispatcher<L extends MessageListener> {
+    /**
+     * The suffix appended to a listener's binary class name to form the name of its generated ListenerDispatcher.
+     */
+    String CLASS_SUFFIX = "$$ListenerDispatcher";
+
+    /**
+     * Creates a {@link MethodMessageHandler} for each of the listener's {@link Handler}s.
+     *
+     * @param listener The listener whose {@link Handler}s will be invoked.
+     * @param handlers The map to add the created {@link MessageHandler}s to, keyed by the type of message they handle.
+     */
+    void createHandlers(@Nonnull L listener, @Nonnull Multimap<Descriptor, MessageHandler> handlers);
+}
@@ -0,0 +1,22 @@
+package tc.oc.protobuf.packet;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Method;
+
+/**
+ * Creates the {@link MessageHandler}s that invoke a {@link MessageListener}'s {@link Handler} methods when the listener
+ * is registered with {@link MessageHandlerRegistry#registerAll(MessageListener)}.
+ */
+public interface MessageHandlerFactory {
+    /**
+     * Creates a {@link MessageHandler} that invokes the specified {@link Handler} method on the specified listener.
+     *
+     * @param listener The listener declaring the method.
+     * @param method   The {@link Handler} method, whose single parameter is the type of {@link
+     *                 com.google.protobuf.Message} it handles.
+     * @return The new {@link MessageHandler}.
+     * @throws IllegalArgumentException If no {@link MessageHandler} can be created for the method.
+     */
+    @Nonnull
+    MessageHandler create(@Nonnull MessageListener listener, @Nonnull Method method) throws IllegalArgumentException;
+}
@@ -18,4 +18,13 @@ public interface MessageHandlerRegistry {
     boolean unRegisterAll(@Nonnull MessageListener listener);
 
     int handle(@Nonnull Message msg);
+
+    /**
+     * Gets whether any handlers are registered for the specified type of message. Used to avoid decoding messages that
+     * would not be handled.
+     *
+     * @param messageDescriptor The type of message.
+     * @return Whether {@link #handle(Message)} would invoke any handlers for a message of the type.
+     */
+    boolean hasHandlers(@Nonnull Descriptor messageDescriptor);
 }
@@ -0,0 +1,35 @@
+package tc.oc.protobuf.packet;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+
+/**
+ * {@link MessageHandler} that invokes a {@link Handler} method, such as those created when a {@link MessageListener} is
+ * registered. Registries read the method's {@link Handler} annotation to decide how the handler is dispatched.
+ */
+public interface MethodMessageHandler extends MessageHandler {
+    /**
+     * Gets the object that the method is invoked on.
+     *
+     * @return The object, or null if the method is static.
+     */
+    @Nullable
+    Object getParent();
+
+    /**
+     * Gets the {@link Handler} method that is invoked.
+     *
+     * @return The method.
+     */
+    @Nonnull
+    Method getMethod();
+
+    /**
+     * Gets the {@link Handler} annotation of the method, resolved once when the handler was created.
+     *
+     * @return The annotation, or null if the method is not annotated.
+     */
+    @Nullable
+    Handler getAnnotation();
+}
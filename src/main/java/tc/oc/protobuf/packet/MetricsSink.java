@@ -0,0 +1,38 @@
+package tc.oc.protobuf.packet;
+
+import com.google.protobuf.Descriptors.Descriptor;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives dispatch metrics from {@link MessageHandlerRegistry}s and {@link PacketManager}s that support them, per type
+ * of message.
+ * <p/>
+ * Sinks are called inline on the threads that parse and handle messages, possibly many at once, so implementations
+ * must be thread-safe and should do as little work as possible. Components without a sink do not measure anything.
+ */
+public interface MetricsSink {
+    /**
+     * Records that a {@link PacketManager} parsed an extension.
+     *
+     * @param type The extension's type.
+     */
+    void parsed(@Nonnull Descriptor type);
+
+    /**
+     * Records that messages had no handlers to dispatch them to.
+     *
+     * @param type  The messages' type.
+     * @param count The number of messages.
+     */
+    void unhandled(@Nonnull Descriptor type, int count);
+
+    /**
+     * Records an invocation of a handler, or of a {@link BatchMessageHandler} for a whole batch.
+     *
+     * @param type   The type of message handled.
+     * @param nanos  How long the invocation took, in nanoseconds.
+     * @param failed Whether the handler threw an exception.
+     */
+    void invoked(@Nonnull Descriptor type, long nanos, boolean failed);
+}
@@ -1,8 +1,14 @@
 package tc.oc.protobuf.packet;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Message;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * Interface to automatically parse and build new packets based on a base packet.
@@ -21,12 +27,154 @@ public interface PacketManager<T extends Message> {
      */
     int parse(@Nonnull final T packet, @Nonnull final MessageHandlerRegistry extensionRegistry);
 
+    /**
+     * Parses a serialized message from the specified input, notifying the {@link MessageHandlerRegistry}'s registered
+     * {@link tc.oc.protobuf.packet.Handler}s of the found extensions without building the message itself.
+     *
+     * @param input             The input to read the serialized message from, until its end or its current limit.
+     * @param extensionRegistry The registry to be used to handle found extensions.
+     * @return The number of extensions handled, <b><i>not</i></b> the number of extensions parsed or the number of
+     *         extensions that the message contained.
+     * @throws IOException If the message could not be read or is malformed.
+     */
+    int parse(@Nonnull final CodedInputStream input, @Nonnull final MessageHandlerRegistry extensionRegistry) throws IOException;
+
+    /**
+     * Parses a serialized message from the specified range of an array, notifying the {@link MessageHandlerRegistry}'s
+     * registered {@link tc.oc.protobuf.packet.Handler}s of the found extensions without building the message itself.
+     *
+     * @param data              The array containing the serialized message.
+     * @param offset            The offset of the serialized message in the array.
+     * @param length            The length of the serialized message.
+     * @param extensionRegistry The registry to be used to handle found extensions.
+     * @return The number of extensions handled, <b><i>not</i></b> the number of extensions parsed or the number of
+     *         extensions that the message contained.
+     * @throws IOException If the message is malformed.
+     */
+    int parse(@Nonnull final byte[] data, final int offset, final int length, @Nonnull final MessageHandlerRegistry extensionRegistry) throws IOException;
+
+    /**
+     * Parses a serialized message from the remaining bytes of the specified buffer, notifying the {@link
+     * MessageHandlerRegistry}'s registered {@link tc.oc.protobuf.packet.Handler}s of the found extensions without
+     * building the message itself. Heap buffers are read in place; direct buffers are copied out, since their contents
+     * can not be read as an array. The buffer's position is advanced to its limit.
+     *
+     * @param data              The buffer containing the serialized message.
+     * @param extensionRegistry The registry to be used to handle found extensions.
+     * @return The number of extensions handled, <b><i>not</i></b> the number of extensions parsed or the number of
+     *         extensions that the message contained.
+     * @throws IOException If the message is malformed.
+     */
+    int parse(@Nonnull final ByteBuffer data, @Nonnull final MessageHandlerRegistry extensionRegistry) throws IOException;
+
+    /**
+     * Parses the specified messages as one batch, notifying the {@link BatchMessageHandlerRegistry}'s registered {@link
+     * tc.oc.protobuf.packet.Handler}s of the extensions found across all of them with a single {@link
+     * BatchMessageHandlerRegistry#handleAll(java.util.List)} call.
+     *
+     * @param packets           The messages to be parsed.
+     * @param extensionRegistry The registry to be used to handle found extensions.
+     * @return The number of handler invocations, as returned by {@link BatchMessageHandlerRegistry#handleAll(java.util.List)}.
+     */
+    int parseAll(@Nonnull final List<? extends T> packets, @Nonnull final BatchMessageHandlerRegistry extensionRegistry);
+
+    /**
+     * Partially builds a new message, setting the specified {@link Message} to its relative extension.
+     *
+     * @param message The message to be added as an extension.
+     * @return The partially built message.
+     * @throws IllegalArgumentException If the message's type is not an extension of the base message.
+     */
+    @Nonnull
+    T build(@Nonnull Message message);
+
+    /**
+     * Partially builds a new message, setting the specified {@link Message}s to their relative extensions.
+     *
+     * @param first  The first message to be added as an extension.
+     * @param second The second message to be added as an extension.
+     * @return The partially built message.
+     * @throws IllegalArgumentException If either message's type is not an extension of the base message.
+     */
+    @Nonnull
+    T build(@Nonnull Message first, @Nonnull Message second);
+
     /**
      * Partially builds a new message, setting the specified {@link Message}s to their relative extensions.
      *
      * @param messages The messages to be added as extensions.
      * @return The partially built message.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
      */
     @Nonnull
     T build(@Nonnull Message... messages);
+
+    /**
+     * Gets the exact number of bytes written by {@link #writeTo(CodedOutputStream, Message...)} for the specified
+     * {@link Message}s, so that a buffer of the right size can be allocated before they are written.
+     *
+     * @param messages The messages to be written as extensions.
+     * @return The size of the serialized message.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
+     */
+    int getSerializedSize(@Nonnull Message... messages);
+
+    /**
+     * Serializes a message carrying the specified {@link Message}s as its extensions into an array of exactly the
+     * right size, without building the message.
+     *
+     * @param messages The messages to be written as extensions. Each type of extension should be given at most once.
+     * @return The serialized message.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
+     * @see #writeTo(CodedOutputStream, Message...)
+     */
+    @Nonnull
+    byte[] toByteArray(@Nonnull Message... messages);
+
+    /**
+     * Serializes a message carrying the specified {@link Message}s as its extensions, without building the message.
+     * The output is the same as serializing {@link #build(Message...)}, except that extensions are written in the order
+     * given rather than in field number order.
+     *
+     * @param output   The output to write the serialized message to. It is not flushed.
+     * @param messages The messages to be written as extensions. Each type of extension should be given at most once.
+     * @throws IOException              If the message could not be written.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
+     */
+    void writeTo(@Nonnull CodedOutputStream output, @Nonnull Message... messages) throws IOException;
+
+    /**
+     * Serializes a message carrying the specified {@link Message}s as its extensions, without building the message.
+     *
+     * @param output   The output to write the serialized message to. It is not flushed.
+     * @param messages The messages to be written as extensions. Each type of extension should be given at most once.
+     * @throws IOException              If the message could not be written.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
+     * @see #writeTo(CodedOutputStream, Message...)
+     */
+    void writeTo(@Nonnull OutputStream output, @Nonnull Message... messages) throws IOException;
+
+    /**
+     * Serializes a message carrying the specified {@link Message}s as its extensions into the remaining space of the
+     * specified buffer, without building the message. The buffer's position is advanced past the serialized message.
+     *
+     * @param output   The buffer to write the serialized message to.
+     * @param messages The messages to be written as extensions. Each type of extension should be given at most once.
+     * @throws IOException              If the buffer does not have room for the message, in which case its position is
+     *                                  left unchanged.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
+     * @see #writeTo(CodedOutputStream, Message...)
+     */
+    void writeTo(@Nonnull ByteBuffer output, @Nonnull Message... messages) throws IOException;
+
+    /**
+     * Gets a {@link PacketTemplate} for building messages that carry the specified type of extension.
+     *
+     * @param type The type of extension.
+     * @param <M>  The type of extension.
+     * @return The template.
+     * @throws IllegalArgumentException If the type is not an extension of the base message.
+     */
+    @Nonnull
+    <M extends Message> PacketTemplate<T, M> template(@Nonnull Class<M> type);
 }
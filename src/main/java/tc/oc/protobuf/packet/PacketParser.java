@@ -1,11 +1,206 @@
 package tc.oc.protobuf.packet;
 
+import com.google.common.base.Preconditions;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 
-public class PacketParser {
-    public static void test() {
+import javax.annotation.Nonnull;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads and writes length-delimited packets over streams, in the same format as {@link
+ * Message#writeDelimitedTo(OutputStream)}: each packet is preceded by its length as a varint.
+ * <p/>
+ * Frames are read into and written from buffers that are reused between frames, so no arrays are allocated per packet
+ * once the buffers have grown to the size of the largest frame. Frames longer than the maximum frame size are rejected
+ * before any buffer is grown for them.
+ * <p/>
+ * A parser is not thread-safe, but its two directions use separate buffers: one thread may read while another writes.
+ *
+ * @param <T> The type of packet.
+ */
+public class PacketParser<T extends Message> {
+    /**
+     * The default maximum frame size, 1 MiB. Connections buffer a whole frame before parsing it, so a peer can make
+     * them allocate up to this much per connection; pass a larger maximum to accept larger packets.
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 1 << 20;
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    @Nonnull
+    private final PacketManager<T> packetManager;
+    private final int maxFrameSize;
+    @Nonnull
+    private byte[] readBuffer = new byte[INITIAL_BUFFER_SIZE];
+    @Nonnull
+    private byte[] writeBuffer = new byte[INITIAL_BUFFER_SIZE];
+
+    /**
+     * Creates a new PacketParser with the {@link #DEFAULT_MAX_FRAME_SIZE}.
+     *
+     * @param packetManager The {@link PacketManager} used to build and parse packets.
+     */
+    public PacketParser(@Nonnull PacketManager<T> packetManager) {
+        this(packetManager, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Creates a new PacketParser.
+     *
+     * @param packetManager The {@link PacketManager} used to build and parse packets.
+     * @param maxFrameSize  The maximum length of a frame, in bytes, not including its length prefix.
+     */
+    public PacketParser(@Nonnull PacketManager<T> packetManager, int maxFrameSize) {
+        this.packetManager = Preconditions.checkNotNull(packetManager, "PacketParser constructor got null PacketManager");
+        Preconditions.checkArgument(maxFrameSize > 0, "PacketParser constructor got non-positive maximum frame size %s", maxFrameSize);
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    public int getMaxFrameSize() {
+        return this.maxFrameSize;
+    }
+
+    /**
+     * Reads a single packet from the specified input and parses it, notifying the {@link MessageHandlerRegistry}'s
+     * registered {@link Handler}s of the found extensions.
+     *
+     * @param input    The input to read the packet from. Only the bytes of the packet are read from it, so it should be
+     *                 buffered.
+     * @param registry The registry to be used to handle found extensions.
+     * @return The number of extensions handled, or -1 if the input ended before the start of a packet.
+     * @throws IOException If the packet could not be read, is malformed, or is longer than the maximum frame size.
+     */
+    public int read(@Nonnull InputStream input, @Nonnull MessageHandlerRegistry registry) throws IOException {
+        Preconditions.checkNotNull(input, "read() got null InputStream");
+        Preconditions.checkNotNull(registry, "read() got null MessageHandlerRegistry");
+        int firstByte = input.read();
+        if (firstByte == -1) {
+            return -1;
+        }
+        int length = CodedInputStream.readRawVarint32(firstByte, input);
+        if (length < 0) {
+            throw new InvalidProtocolBufferException("Frame has negative length " + length);
+        }
+        if (length > this.maxFrameSize) {
+            throw new InvalidProtocolBufferException("Frame of " + length + " bytes exceeds the maximum of " + this.maxFrameSize);
+        }
+        if (this.readBuffer.length < length) {
+            this.readBuffer = new byte[this.grow(this.readBuffer.length, length)];
+        }
+        for (int read = 0; read < length; ) {
+            int count = input.read(this.readBuffer, read, length - read);
+            if (count == -1) {
+                throw new EOFException("Input ended " + (length - read) + " bytes before the end of the frame");
+            }
+            read += count;
+        }
+        return this.packetManager.parse(this.readBuffer, 0, length, registry);
+    }
+
+    /**
+     * Writes a packet carrying the specified extensions, preceded by its length, to the specified output with a single
+     * write. The packet is serialized directly from the extensions with {@link PacketManager#writeTo(CodedOutputStream,
+     * Message...)}, without being built.
+     * <p/>
+     * The output is not flushed, so that several packets can be written to a buffered output and flushed together.
+     *
+     * @param output   The output to write the packet to.
+     * @param messages The messages to be added as extensions.
+     * @throws IOException If the packet could not be written, or is longer than the maximum frame size.
+     */
+    public void send(@Nonnull OutputStream output, @Nonnull Message... messages) throws IOException {
+        Preconditions.checkNotNull(output, "send() got null OutputStream");
+        int length = this.packetManager.getSerializedSize(messages);
+        CodedOutputStream frame = this.startFrame(length);
+        this.packetManager.writeTo(frame, messages);
+        this.finishFrame(output, frame, length);
+    }
+
+    /**
+     * Writes the specified packet, preceded by its length, to the specified output with a single write.
+     * <p/>
+     * The output is not flushed, so that several packets can be written to a buffered output and flushed together.
+     *
+     * @param output The output to write the packet to.
+     * @param packet The packet.
+     * @throws IOException If the packet could not be written, or is longer than the maximum frame size.
+     */
+    public void write(@Nonnull OutputStream output, @Nonnull T packet) throws IOException {
+        Preconditions.checkNotNull(output, "write() got null OutputStream");
+        Preconditions.checkNotNull(packet, "write() got null Message");
+        int length = packet.getSerializedSize();
+        CodedOutputStream frame = this.startFrame(length);
+        packet.writeTo(frame);
+        this.finishFrame(output, frame, length);
+    }
+
+    /**
+     * Writes the already framed {@link BroadcastPacket} to the specified output, without encoding or copying it.
+     * <p/>
+     * The output is not flushed, so that several packets can be written to a buffered output and flushed together.
+     *
+     * @param output The output to write the packet to.
+     * @param packet The packet.
+     * @throws IOException If the packet could not be written, or is longer than the maximum frame size.
+     */
+    public void write(@Nonnull OutputStream output, @Nonnull BroadcastPacket packet) throws IOException {
+        Preconditions.checkNotNull(output, "write() got null OutputStream");
+        Preconditions.checkNotNull(packet, "write() got null BroadcastPacket");
+        if (packet.getLength() > this.maxFrameSize) {
+            throw new IOException("Frame of " + packet.getLength() + " bytes exceeds the maximum of " + this.maxFrameSize);
+        }
+        packet.writeTo(output);
+    }
+
+    /**
+     * Starts a frame of the specified length in the write buffer, growing it to exactly fit the frame if needed.
+     *
+     * @param length The length of the packet.
+     * @return The output to write the packet to, positioned after the length prefix.
+     * @throws IOException If the packet is longer than the maximum frame size.
+     */
+    @Nonnull
+    private CodedOutputStream startFrame(int length) throws IOException {
+        if (length > this.maxFrameSize) {
+            throw new IOException("Frame of " + length + " bytes exceeds the maximum of " + this.maxFrameSize);
+        }
+        int frameLength = CodedOutputStream.computeRawVarint32Size(length) + length;
+        if (this.writeBuffer.length < frameLength) {
+            this.writeBuffer = new byte[this.grow(this.writeBuffer.length, frameLength)];
+        }
+        CodedOutputStream frame = CodedOutputStream.newInstance(this.writeBuffer, 0, frameLength);
+        frame.writeRawVarint32(length);
+        return frame;
+    }
+
+    /**
+     * Writes the frame in the write buffer to the specified output.
+     *
+     * @param output The output.
+     * @param frame  The frame's output, which must have been filled.
+     * @param length The length of the packet.
+     * @throws IOException If the frame could not be written.
+     */
+    private void finishFrame(@Nonnull OutputStream output, @Nonnull CodedOutputStream frame, int length) throws IOException {
+        frame.checkNoSpaceLeft();
+        output.write(this.writeBuffer, 0, CodedOutputStream.computeRawVarint32Size(length) + length);
     }
 
-    public static void send(Message msg) {
+    /**
+     * Gets the size to grow a buffer to so that it can hold the specified number of bytes, doubling its size where
+     * possible so that a stream of slowly growing frames does not reallocate the buffer for every frame, but not past
+     * the maximum frame size unless required.
+     *
+     * @param current  The current size of the buffer.
+     * @param required The number of bytes the buffer must hold.
+     * @return The new size of the buffer.
+     */
+    private int grow(int current, int required) {
+        return Math.max(required, Math.min(current << 1, this.maxFrameSize));
     }
 }
@@ -0,0 +1,32 @@
+package tc.oc.protobuf.packet;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A pre-resolved handle for building packets that carry a single type of extension, obtained from {@link
+ * PacketManager#template(Class)}. Building a packet from a template does not look up the extension's field.
+ *
+ * @param <T> The type of packet.
+ * @param <M> The type of extension.
+ */
+public interface PacketTemplate<T extends Message, M extends Message> {
+    /**
+     * Gets the extension field that messages are set to.
+     *
+     * @return The extension field.
+     */
+    @Nonnull
+    FieldDescriptor getField();
+
+    /**
+     * Partially builds a new packet, setting the specified message to the template's extension.
+     *
+     * @param message The message to be added as an extension.
+     * @return The partially built packet.
+     */
+    @Nonnull
+    T build(@Nonnull M message);
+}
@@ -0,0 +1,252 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Booleans;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.Message;
+import tc.oc.protobuf.packet.Dispatch;
+import tc.oc.protobuf.packet.Handler;
+import tc.oc.protobuf.packet.MessageHandler;
+import tc.oc.protobuf.packet.MessageHandlerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * {@link SimpleMessageHandlerRegistry} that invokes handlers on an {@link Executor} instead of the thread handling the
+ * message, so that slow handlers do not hold up the thread that decoded the message. Handlers whose {@link Handler} is
+ * declared {@link Handler#inline()} are still invoked on the handling thread, as they are reached in order of priority.
+ * <p/>
+ * Each asynchronous handler is submitted as a separate task, so no ordering is guaranteed between handlers of the same
+ * message, or between messages. Only inline handlers can usefully {@link Dispatch#setCancelled(boolean) cancel} a
+ * dispatch: an asynchronous handler is skipped if it ignores cancelled messages and the dispatch was cancelled before it
+ * was submitted, and runs in a {@link Dispatch} of its own otherwise.
+ */
+public class AsyncMessageHandlerRegistry extends SimpleMessageHandlerRegistry {
+    /**
+     * The executor that handlers are invoked on.
+     */
+    @Nonnull
+    private final Executor executor;
+
+    /**
+     * Creates a new AsyncMessageHandlerRegistry without a {@link Logger}.
+     *
+     * @param executor The executor that handlers are invoked on.
+     */
+    public AsyncMessageHandlerRegistry(@Nonnull Executor executor) {
+        this(null, executor);
+    }
+
+    /**
+     * Creates a new AsyncMessageHandlerRegistry with a {@link Logger} to log errors to.
+     *
+     * @param logger   The {@link Logger} to log errors to.
+     * @param executor The executor that handlers are invoked on.
+     */
+    public AsyncMessageHandlerRegistry(@Nullable Logger logger, @Nonnull Executor executor) {
+        this(logger, MethodMessageExecutor.FACTORY, executor);
+    }
+
+    /**
+     * Creates a new AsyncMessageHandlerRegistry with a {@link Logger} to log errors to, which creates the {@link
+     * MessageHandler}s for registered listeners using the specified {@link MessageHandlerFactory}.
+     *
+     * @param logger         The {@link Logger} to log errors to.
+     * @param handlerFactory The {@link MessageHandlerFactory} used by {@link #registerAll(tc.oc.protobuf.packet.MessageListener)}.
+     * @param executor       The executor that handlers are invoked on.
+     */
+    public AsyncMessageHandlerRegistry(@Nullable Logger logger, @Nonnull MessageHandlerFactory handlerFactory, @Nonnull Executor executor) {
+        super(logger, handlerFactory);
+        this.executor = Preconditions.checkNotNull(executor, "AsyncMessageHandlerRegistry constructor got null Executor");
+    }
+
+    /**
+     * Handles the specified {@link Message}, invoking its inline handlers and submitting the rest to the executor. If
+     * all of its handlers are inline, they are invoked exactly as by {@link SimpleMessageHandlerRegistry}.
+     *
+     * @param message The {@link Message} to be handled.
+     * @return The number of inline handlers that were invoked plus the number of handlers that were submitted.
+     */
+    @Override
+    public int handle(@Nonnull Message message) {
+        Preconditions.checkNotNull(message, "handle() got null Message");
+        HandlerList handlerList = this.getHandlerList(message.getDescriptorForType(), 1);
+        if (handlerList == null) {
+            return 0;
+        }
+        if (handlerList.allInline) {
+            return this.handleInline(handlerList, message);
+        }
+        int numHandled = 0;
+        Dispatch dispatch = Dispatch.begin();
+        try {
+            for (int i = 0; i < handlerList.handlers.length; i++) {
+                if (handlerList.ignoreCancelled[i] && dispatch.isCancelled()) {
+                    continue;
+                }
+                if (handlerList.inline[i] ? this.invoke(handlerList.handlers[i], message) : this.submit(handlerList.handlers[i], message, dispatch.isCancelled(), null)) {
+                    numHandled++;
+                }
+            }
+        } finally {
+            dispatch.end();
+        }
+        return numHandled;
+    }
+
+    /**
+     * Handles the specified {@link Message}, invoking its inline handlers and submitting the rest to the executor.
+     *
+     * @param message The {@link Message} to be handled.
+     * @return A future of the number of handlers that completed without an exception, which completes once all of the
+     *         message's handlers have completed. The future is already complete if all of the handlers are inline.
+     */
+    @Nonnull
+    public ListenableFuture<Integer> handleAsync(@Nonnull Message message) {
+        Preconditions.checkNotNull(message, "handleAsync() got null Message");
+        HandlerList handlerList = this.getHandlerList(message.getDescriptorForType(), 1);
+        if (handlerList == null) {
+            return Futures.immediateFuture(0);
+        }
+        if (handlerList.allInline) {
+            // Nothing to wait for, so skip tracking the completion of each handler
+            return Futures.immediateFuture(this.handleInline(handlerList, message));
+        }
+        Completion completion = new Completion(handlerList.handlers.length);
+        Dispatch dispatch = Dispatch.begin();
+        try {
+            for (int i = 0; i < handlerList.handlers.length; i++) {
+                if (handlerList.ignoreCancelled[i] && dispatch.isCancelled()) {
+                    completion.complete(false);
+                } else if (handlerList.inline[i]) {
+                    completion.complete(this.invoke(handlerList.handlers[i], message));
+                } else {
+                    this.submit(handlerList.handlers[i], message, dispatch.isCancelled(), completion);
+                }
+            }
+        } finally {
+            dispatch.end();
+        }
+        return completion.future;
+    }
+
+    /**
+     * Handles a group of messages of the same type, invoking the inline handlers and submitting the rest to the
+     * executor, each as a single task for the whole group. A submitted handler sees the messages as cancelled if they
+     * were cancelled when it was submitted.
+     *
+     * @param handlerList The handlers of the messages' type.
+     * @param group       The messages.
+     * @return The number of inline handler invocations plus the number of handlers that were submitted.
+     */
+    @Override
+    int handleGroup(@Nonnull HandlerList handlerList, @Nonnull final List<Message> group) {
+        if (handlerList.allInline) {
+            return super.handleGroup(handlerList, group);
+        }
+        boolean[] cancelled = new boolean[group.size()];
+        int numHandled = 0;
+        Dispatch dispatch = Dispatch.begin();
+        try {
+            for (int i = 0; i < handlerList.handlers.length; i++) {
+                if (handlerList.inline[i]) {
+                    numHandled += this.invokeGroup(handlerList.handlers[i], handlerList.batch[i], handlerList.ignoreCancelled[i], group, cancelled, dispatch);
+                    continue;
+                }
+                if (handlerList.ignoreCancelled[i] && !Booleans.contains(cancelled, false)) {
+                    continue;
+                }
+                final MessageHandler handler = handlerList.handlers[i];
+                final boolean batch = handlerList.batch[i];
+                final boolean ignoreCancelled = handlerList.ignoreCancelled[i];
+                final boolean[] submittedCancelled = cancelled.clone();
+                try {
+                    this.executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            Dispatch dispatch = Dispatch.begin();
+                            try {
+                                invokeGroup(handler, batch, ignoreCancelled, group, submittedCancelled, dispatch);
+                            } finally {
+                                dispatch.end();
+                            }
+                        }
+                    });
+                    numHandled++;
+                } catch (RejectedExecutionException e) {
+                    this.logException("Executor rejected handler for " + group.size() + " messages of type " + group.get(0).getDescriptorForType().getFullName(), e);
+                }
+            }
+        } finally {
+            dispatch.end();
+        }
+        return numHandled;
+    }
+
+    /**
+     * Submits the specified handler to the executor.
+     *
+     * @param handler    The handler to invoke.
+     * @param message    The message to handle.
+     * @param cancelled  Whether the dispatch of the message was cancelled when the handler was submitted.
+     * @param completion The completion to notify once the handler has completed, if any.
+     * @return Whether the handler was accepted by the executor.
+     */
+    private boolean submit(@Nonnull final MessageHandler handler, @Nonnull final Message message, final boolean cancelled, @Nullable final Completion completion) {
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean succeeded = false;
+                    Dispatch dispatch = Dispatch.begin();
+                    dispatch.setCancelled(cancelled);
+                    try {
+                        succeeded = invoke(handler, message);
+                    } finally {
+                        dispatch.end();
+                        if (completion != null) {
+                            completion.complete(succeeded);
+                        }
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            this.logException("Executor rejected handler for " + message.getDescriptorForType().getFullName(), e);
+            if (completion != null) {
+                completion.complete(false);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Tracks the handlers of a message handled by {@link #handleAsync(Message)}.
+     */
+    private static final class Completion {
+        private final SettableFuture<Integer> future = SettableFuture.create();
+        private final AtomicInteger remaining;
+        private final AtomicInteger succeeded = new AtomicInteger();
+
+        private Completion(int handlers) {
+            this.remaining = new AtomicInteger(handlers);
+        }
+
+        private void complete(boolean succeeded) {
+            if (succeeded) {
+                this.succeeded.incrementAndGet();
+            }
+            if (this.remaining.decrementAndGet() == 0) {
+                this.future.set(this.succeeded.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Message;
+import tc.oc.protobuf.packet.BatchMessageHandlerRegistry;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects dispatched messages into batches that are each handled with a single {@link
+ * BatchMessageHandlerRegistry#handleAll(List)} call, so that {@link tc.oc.protobuf.packet.BatchMessageHandler}s receive many
+ * messages of a type at once rather than one at a time.
+ * <p/>
+ * A batch is flushed once it holds {@link #getMaxMessages() max messages}, on the thread that dispatched its last
+ * message, or once {@link #getMaxDelay() max delay} has passed since its first message was dispatched, on the
+ * scheduler. Batches flushed from different threads may be handled concurrently.
+ */
+public class BatchingDispatcher implements Closeable {
+    @Nonnull
+    private final BatchMessageHandlerRegistry registry;
+    private final int maxMessages;
+    private final long maxDelay;
+    @Nonnull
+    private final ScheduledExecutorService scheduler;
+    /**
+     * The messages dispatched since the last flush. Guarded by this dispatcher.
+     */
+    @Nonnull
+    private List<Message> batch = new ArrayList<>();
+    /**
+     * The flush scheduled when the first message of {@link #batch} was dispatched, or null if the batch is empty.
+     * Guarded by this dispatcher.
+     */
+    @Nullable
+    private ScheduledFuture<?> scheduled;
+    private boolean closed;
+
+    /**
+     * Creates a new BatchingDispatcher.
+     *
+     * @param registry    The registry used to handle batches.
+     * @param maxMessages The number of messages at which a batch is flushed.
+     * @param maxDelay    The longest time a message waits in a batch before it is flushed.
+     * @param unit        The unit of the delay.
+     * @param scheduler   The executor that batches are flushed on once they have waited for the delay.
+     */
+    public BatchingDispatcher(@Nonnull BatchMessageHandlerRegistry registry, int maxMessages, long maxDelay, @Nonnull TimeUnit unit, @Nonnull ScheduledExecutorService scheduler) {
+        Preconditions.checkArgument(maxMessages > 0, "BatchingDispatcher constructor got non-positive max messages %s", maxMessages);
+        Preconditions.checkArgument(maxDelay > 0, "BatchingDispatcher constructor got non-positive max delay %s", maxDelay);
+        this.registry = Preconditions.checkNotNull(registry, "BatchingDispatcher constructor got null BatchMessageHandlerRegistry");
+        this.maxMessages = maxMessages;
+        this.maxDelay = Preconditions.checkNotNull(unit, "BatchingDispatcher constructor got null TimeUnit").toNanos(maxDelay);
+        this.scheduler = Preconditions.checkNotNull(scheduler, "BatchingDispatcher constructor got null ScheduledExecutorService");
+    }
+
+    public int getMaxMessages() {
+        return this.maxMessages;
+    }
+
+    /**
+     * Gets the longest time a message waits in a batch before it is flushed.
+     *
+     * @return The delay, in nanoseconds.
+     */
+    public long getMaxDelay() {
+        return this.maxDelay;
+    }
+
+    /**
+     * Adds the specified message to the current batch, handling the batch on the calling thread if it is full.
+     *
+     * @param message The message to handle.
+     * @throws IllegalStateException      If the dispatcher has been closed.
+     * @throws RejectedExecutionException If the scheduler rejected the flush of a new batch.
+     */
+    public void dispatch(@Nonnull Message message) throws RejectedExecutionException {
+        Preconditions.checkNotNull(message, "dispatch() got null Message");
+        List<Message> full = null;
+        synchronized (this) {
+            Preconditions.checkState(!this.closed, "BatchingDispatcher has been closed");
+            this.batch.add(message);
+            if (this.batch.size() >= this.maxMessages) {
+                full = this.take();
+            } else if (this.batch.size() == 1) {
+                final List<Message> batch = this.batch;
+                try {
+                    this.scheduled = this.scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            flush(batch);
+                        }
+                    }, this.maxDelay, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    batch.clear();
+                    throw e;
+                }
+            }
+        }
+        if (full != null) {
+            this.registry.handleAll(full);
+        }
+    }
+
+    /**
+     * Handles the current batch on the calling thread, if it is not empty.
+     *
+     * @return The number of handler invocations, as returned by {@link BatchMessageHandlerRegistry#handleAll(List)}.
+     */
+    public int flush() {
+        List<Message> batch;
+        synchronized (this) {
+            batch = this.take();
+        }
+        return batch.isEmpty() ? 0 : this.registry.handleAll(batch);
+    }
+
+    /**
+     * Handles the current batch, and stops accepting messages.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+        }
+        this.flush();
+    }
+
+    /**
+     * Handles the specified batch on the calling thread, if it is still the current batch. Called by the scheduler.
+     *
+     * @param batch The batch that the flush was scheduled for.
+     */
+    private void flush(@Nonnull List<Message> batch) {
+        synchronized (this) {
+            // The batch may have been flushed by another thread since this flush was scheduled
+            if (batch != this.batch) {
+                return;
+            }
+            this.take();
+        }
+        this.registry.handleAll(batch);
+    }
+
+    /**
+     * Takes the current batch, cancelling its scheduled flush and starting a new batch. Must be called while holding
+     * the lock on this dispatcher.
+     *
+     * @return The batch, which may be empty.
+     */
+    @Nonnull
+    private List<Message> take() {
+        if (this.batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Message> batch = this.batch;
+        this.batch = new ArrayList<>();
+        if (this.scheduled != null) {
+            this.scheduled.cancel(false);
+            this.scheduled = null;
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,104 @@
+package tc.oc.protobuf.packet.base;
+
+import tc.oc.protobuf.packet.BatchMessageHandler;
+import tc.oc.protobuf.packet.Dispatch;
+import tc.oc.protobuf.packet.Handler;
+import tc.oc.protobuf.packet.HandlerPriority;
+import tc.oc.protobuf.packet.MessageHandler;
+import tc.oc.protobuf.packet.MethodMessageHandler;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The immutable, prebuilt list of {@link MessageHandler}s registered for a type of message, along with the dispatch
+ * options of each handler read from its {@link Handler} annotation when the list is built. The handlers are sorted by
+ * {@link Handler#priority()} when the list is built, so that dispatch only has to walk them in order.
+ */
+final class HandlerList {
+    /**
+     * The handlers, in the order they should be invoked: by priority, then in registration order. Never modified.
+     */
+    @Nonnull
+    final MessageHandler[] handlers;
+    /**
+     * Whether each handler in {@link #handlers} must be invoked inline. Never modified.
+     */
+    @Nonnull
+    final boolean[] inline;
+    /**
+     * Whether every handler in {@link #handlers} must be invoked inline, in which case {@link
+     * AsyncMessageHandlerRegistry} dispatches the message without checking each handler.
+     */
+    final boolean allInline;
+    /**
+     * Whether each handler in {@link #handlers} is a {@link BatchMessageHandler}. Never modified.
+     */
+    @Nonnull
+    final boolean[] batch;
+    /**
+     * Whether each handler in {@link #handlers} is skipped once the {@link Dispatch} is cancelled. Never modified.
+     */
+    @Nonnull
+    final boolean[] ignoreCancelled;
+
+    /**
+     * Creates a new HandlerList.
+     *
+     * @param handlers The handlers, in registration order.
+     */
+    HandlerList(@Nonnull Collection<MessageHandler> handlers) {
+        int size = handlers.size();
+        final Map<MessageHandler, Handler> annotations = new IdentityHashMap<>(size);
+        for (MessageHandler handler : handlers) {
+            annotations.put(handler, getAnnotation(handler));
+        }
+        List<MessageHandler> sorted = new ArrayList<>(handlers);
+        // Collections.sort is stable, so handlers of the same priority stay in registration order
+        Collections.sort(sorted, new Comparator<MessageHandler>() {
+            @Override
+            public int compare(MessageHandler a, MessageHandler b) {
+                return getPriority(annotations.get(a)).compareTo(getPriority(annotations.get(b)));
+            }
+        });
+        this.handlers = sorted.toArray(new MessageHandler[size]);
+        this.inline = new boolean[size];
+        this.batch = new boolean[size];
+        this.ignoreCancelled = new boolean[size];
+        boolean allInline = true;
+        for (int i = 0; i < size; i++) {
+            Handler annotation = annotations.get(this.handlers[i]);
+            this.inline[i] = annotation != null && annotation.inline();
+            this.batch[i] = this.handlers[i] instanceof BatchMessageHandler;
+            this.ignoreCancelled[i] = annotation != null && annotation.ignoreCancelled();
+            allInline &= this.inline[i];
+        }
+        this.allInline = allInline;
+    }
+
+    @Nonnull
+    private static HandlerPriority getPriority(@Nullable Handler annotation) {
+        return annotation != null ? annotation.priority() : HandlerPriority.NORMAL;
+    }
+
+    /**
+     * Gets the {@link Handler} annotation of the method invoked by the specified handler.
+     *
+     * @param handler The handler.
+     * @return The annotation, or null if the handler does not invoke an annotated method.
+     */
+    @Nullable
+    private static Handler getAnnotation(@Nonnull MessageHandler handler) {
+        if (handler instanceof MethodMessageHandler) {
+            return ((MethodMessageHandler) handler).getAnnotation();
+        }
+        return null;
+    }
+}
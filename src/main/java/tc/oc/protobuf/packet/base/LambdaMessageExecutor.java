@@ -0,0 +1,326 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.protobuf.Message;
+import tc.oc.protobuf.packet.Handler;
+import tc.oc.protobuf.packet.HandlerException;
+import tc.oc.protobuf.packet.MessageHandler;
+import tc.oc.protobuf.packet.MessageHandlerFactory;
+import tc.oc.protobuf.packet.MessageListener;
+import tc.oc.protobuf.packet.MethodMessageHandler;
+import tc.oc.protobuf.packet.util.DescriptorUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link MessageHandler} that invokes a {@link Handler} method through a class spun for the method by {@code
+ * java.lang.invoke.LambdaMetafactory}, which calls the method directly with a cast instead of through a {@link
+ * MethodHandle}, so that the JIT can inline the method like a hand-written handler.
+ * <p/>
+ * The library targets Java 7, so the metafactory is looked up at runtime. The spun class is defined alongside the
+ * lookup class of the {@link MethodHandles.Lookup} it is spun with, and can only call what that class can see and
+ * access. {@link #FACTORY} spins classes with this library's lookup, so listeners loaded by another class loader, such
+ * as a plugin's, need a factory created by {@link #factory(MethodHandles.Lookup)} with a lookup of their own. Factories
+ * fall back to {@link MethodMessageExecutor}s when the metafactory is not available, and for methods that a spun class
+ * can not call: static methods, batch handlers, and methods whose class or message type is not accessible to the
+ * lookup class.
+ */
+public final class LambdaMessageExecutor implements MethodMessageHandler {
+    private static final Logger LOGGER = Logger.getLogger(LambdaMessageExecutor.class.getName());
+    /**
+     * The type of {@link Invoker#invoke(Object, Message)}.
+     */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class, Message.class);
+    /**
+     * The handle of {@code LambdaMetafactory.metafactory}, or null if it is not available.
+     */
+    @Nullable
+    private static final MethodHandle METAFACTORY = findMetafactory();
+    /**
+     * The {@code LambdaConversionException} thrown by the metafactory when it can not spin a class, or null if it is
+     * not available.
+     */
+    @Nullable
+    private static final Class<?> LAMBDA_CONVERSION_EXCEPTION = findClass("java.lang.invoke.LambdaConversionException");
+    /**
+     * Cached in place of an invoker for methods that the metafactory failed to spin a class for, so that the fallback
+     * is only logged once.
+     */
+    private static final Invoker FAILED = new Invoker() {
+        @Override
+        public void invoke(@Nonnull Object listener, @Nonnull Message message) {
+            throw new UnsupportedOperationException("No class was spun for the method");
+        }
+    };
+    /**
+     * The invokers spun for the handler methods of each class, so that registering further instances of a listener
+     * does not spin another class.
+     */
+    private static final ClassValue<ConcurrentMap<Method, Invoker>> INVOKERS = new ClassValue<ConcurrentMap<Method, Invoker>>() {
+        @Override
+        protected ConcurrentMap<Method, Invoker> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+    /**
+     * {@link MessageHandlerFactory} that creates LambdaMessageExecutors where this library's lookup can spin them, and
+     * {@link MethodMessageExecutor}s otherwise.
+     */
+    public static final MessageHandlerFactory FACTORY = new Factory(MethodHandles.lookup());
+
+    @Nonnull
+    private final Object parent;
+    @Nonnull
+    private final Method method;
+    @Nullable
+    private final Handler annotation;
+    @Nonnull
+    private final Invoker invoker;
+
+    private LambdaMessageExecutor(@Nonnull Object parent, @Nonnull Method method, @Nonnull Invoker invoker) {
+        this.parent = parent;
+        this.method = method;
+        this.annotation = method.getAnnotation(Handler.class);
+        this.invoker = invoker;
+    }
+
+    /**
+     * Gets whether {@code LambdaMetafactory} is available, without which {@link #FACTORY} only creates {@link
+     * MethodMessageExecutor}s.
+     *
+     * @return Whether the running JVM supports spinning classes for handler methods.
+     */
+    public static boolean isAvailable() {
+        return METAFACTORY != null;
+    }
+
+    @Nonnull
+    @Override
+    public Object getParent() {
+        return this.parent;
+    }
+
+    @Nonnull
+    @Override
+    public Method getMethod() {
+        return this.method;
+    }
+
+    @Nullable
+    @Override
+    public Handler getAnnotation() {
+        return this.annotation;
+    }
+
+    @Override
+    public void handle(@Nonnull Message msg) throws HandlerException {
+        Preconditions.checkNotNull(msg, "message");
+
+        try {
+            this.invoker.invoke(this.parent, msg);
+        } catch (Throwable t) {
+            throw HandlerException.wrap(t);
+        }
+    }
+
+    /**
+     * Creates a {@link MessageHandlerFactory} that spins classes with the specified lookup, for listeners that this
+     * library's class loader can not see or access. The lookup is typically created by the listener's class with
+     * {@link MethodHandles#lookup()}.
+     *
+     * @param lookup The lookup with private access that the classes are spun with.
+     * @return A factory that creates LambdaMessageExecutors where the lookup can spin them, and {@link
+     * MethodMessageExecutor}s otherwise.
+     */
+    @Nonnull
+    public static MessageHandlerFactory factory(@Nonnull MethodHandles.Lookup lookup) {
+        Preconditions.checkNotNull(lookup, "factory() got null Lookup");
+        Preconditions.checkArgument((lookup.lookupModes() & MethodHandles.Lookup.PRIVATE) != 0, "factory() got Lookup without private access to %s", lookup.lookupClass().getName());
+        return new Factory(lookup);
+    }
+
+    /**
+     * Gets the invoker of the specified method, spinning it the first time it is needed.
+     *
+     * @param lookup The lookup that a class is spun with.
+     * @param method The {@link Handler} method.
+     * @return The invoker, or null if no class can be spun for the method.
+     */
+    @Nullable
+    private static Invoker getInvoker(@Nonnull MethodHandles.Lookup lookup, @Nonnull Method method) {
+        if (METAFACTORY == null || Modifier.isStatic(method.getModifiers()) || DescriptorUtil.isBatch(method) || method.getParameterTypes().length != 1) {
+            return null;
+        }
+        ConcurrentMap<Method, Invoker> invokers = INVOKERS.get(method.getDeclaringClass());
+        Invoker invoker = invokers.get(method);
+        if (invoker == null) {
+            invoker = spin(lookup, method);
+            if (invoker == null) {
+                return null;
+            }
+            Invoker existing = invokers.putIfAbsent(method, invoker);
+            if (existing != null) {
+                invoker = existing;
+            }
+        }
+        return invoker == FAILED ? null : invoker;
+    }
+
+    /**
+     * Spins the class of an invoker that calls the specified method.
+     *
+     * @param lookup The lookup that the class is spun with.
+     * @param method The {@link Handler} method.
+     * @return The invoker, null if the spun class would not be able to call the method, or {@link #FAILED} if the
+     * metafactory failed to spin the class.
+     */
+    @Nullable
+    private static Invoker spin(@Nonnull MethodHandles.Lookup lookup, @Nonnull Method method) {
+        Class<?> caller = lookup.lookupClass();
+        Class<?> listenerType = method.getDeclaringClass();
+        Class<?> messageType = method.getParameterTypes()[0];
+        // The spun class is defined alongside the lookup class, and can only call what that class can see and access
+        if (!isAccessible(caller, listenerType, method.getModifiers()) || !isVisible(caller, listenerType) || !isVisible(caller, messageType) || !isVisible(caller, Invoker.class)) {
+            return null;
+        }
+        try {
+            CallSite site = (CallSite) METAFACTORY.invoke(lookup, "invoke", MethodType.methodType(Invoker.class), INVOKER_TYPE, lookup.unreflect(method), MethodType.methodType(void.class, listenerType, messageType));
+            return (Invoker) site.getTarget().invoke();
+        } catch (IllegalAccessException e) {
+            return failed(method, e);
+        } catch (Throwable t) {
+            if (LAMBDA_CONVERSION_EXCEPTION != null && LAMBDA_CONVERSION_EXCEPTION.isInstance(t)) {
+                return failed(method, t);
+            }
+            throw Throwables.propagate(t);
+        }
+    }
+
+    /**
+     * Logs that the metafactory failed to spin a class for the specified method.
+     *
+     * @param method The {@link Handler} method.
+     * @param cause  The exception thrown by the metafactory.
+     * @return {@link #FAILED}.
+     */
+    @Nonnull
+    private static Invoker failed(@Nonnull Method method, @Nonnull Throwable cause) {
+        LOGGER.log(Level.WARNING, "Failed to spin a class for handler method " + method + ", falling back to a MethodMessageExecutor", cause);
+        return FAILED;
+    }
+
+    /**
+     * Gets whether the specified class is accessible to the lookup class, and is the class that the lookup class's
+     * loader loads by its name. Nested classes declared public are public to the JVM even if the classes enclosing them
+     * are not.
+     *
+     * @param caller The lookup class.
+     * @param type   The class.
+     * @return Whether a class spun alongside the lookup class can refer to the class.
+     */
+    private static boolean isVisible(@Nonnull Class<?> caller, @Nonnull Class<?> type) {
+        if (!isAccessible(caller, type, type.getModifiers())) {
+            return false;
+        }
+        try {
+            return Class.forName(type.getName(), false, caller.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets whether a member or class with the specified modifiers, declared by or being the specified class, is
+     * accessible to the lookup class.
+     *
+     * @param caller    The lookup class.
+     * @param type      The class that declares the member, or the class itself.
+     * @param modifiers The modifiers of the member or class.
+     * @return Whether the lookup class can access it.
+     */
+    private static boolean isAccessible(@Nonnull Class<?> caller, @Nonnull Class<?> type, int modifiers) {
+        if (Modifier.isPublic(modifiers)) {
+            return true;
+        } else if (Modifier.isPrivate(modifiers)) {
+            return caller == type;
+        }
+        return caller.getClassLoader() == type.getClassLoader() && getPackageName(caller).equals(getPackageName(type));
+    }
+
+    @Nonnull
+    private static String getPackageName(@Nonnull Class<?> type) {
+        String name = type.getName();
+        return name.substring(0, Math.max(name.lastIndexOf('.'), 0));
+    }
+
+    @Nullable
+    private static MethodHandle findMetafactory() {
+        Class<?> metafactory = findClass("java.lang.invoke.LambdaMetafactory");
+        if (metafactory == null) {
+            return null;
+        }
+        try {
+            return MethodHandles.publicLookup().findStatic(metafactory, "metafactory", MethodType.methodType(CallSite.class, MethodHandles.Lookup.class, String.class, MethodType.class, MethodType.class, MethodHandle.class, MethodType.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Class<?> findClass(@Nonnull String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * {@link MessageHandlerFactory} that spins classes with a lookup.
+     */
+    private static final class Factory implements MessageHandlerFactory {
+        @Nonnull
+        private final MethodHandles.Lookup lookup;
+
+        private Factory(@Nonnull MethodHandles.Lookup lookup) {
+            this.lookup = lookup;
+        }
+
+        @Nonnull
+        @Override
+        public MessageHandler create(@Nonnull MessageListener listener, @Nonnull Method method) throws IllegalArgumentException {
+            Invoker invoker = getInvoker(this.lookup, method);
+            if (invoker == null) {
+                return MethodMessageExecutor.FACTORY.create(listener, method);
+            }
+            return new LambdaMessageExecutor(listener, method, invoker);
+        }
+    }
+
+    /**
+     * The interface implemented by the classes spun for handler methods. Public so that classes spun alongside a
+     * listener loaded by another class loader can implement it.
+     */
+    public interface Invoker {
+        /**
+         * Calls the handler method.
+         *
+         * @param listener The listener to call the method on.
+         * @param message  The message to pass to the method.
+         * @throws Throwable Anything thrown by the method.
+         */
+        void invoke(@Nonnull Object listener, @Nonnull Message message) throws Throwable;
+    }
+}
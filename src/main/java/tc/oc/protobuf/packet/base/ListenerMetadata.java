@@ -0,0 +1,168 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.Descriptors.Descriptor;
+import tc.oc.protobuf.packet.Handler;
+import tc.oc.protobuf.packet.ListenerDispatcher;
+import tc.oc.protobuf.packet.MessageListener;
+import tc.oc.protobuf.packet.util.DescriptorUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * The {@link Handler}s of a {@link MessageListener} class, resolved once per class so that registering further
+ * instances of the class only has to bind the cached handlers to the instance.
+ * <p/>
+ * Metadata is cached with a {@link ClassValue}, which stores it alongside the listener class itself rather than in a
+ * map owned by this library, so the cache does not keep unloaded plugin class loaders reachable.
+ */
+final class ListenerMetadata {
+    private static final ClassValue<ListenerMetadata> CACHE = new ClassValue<ListenerMetadata>() {
+        @Override
+        protected ListenerMetadata computeValue(Class<?> type) {
+            return new ListenerMetadata(type);
+        }
+    };
+
+    /**
+     * The class's generated {@link ListenerDispatcher}, if it has one.
+     */
+    @Nonnull
+    final Optional<ListenerDispatcher<MessageListener>> dispatcher;
+    @Nonnull
+    private final Class<?> type;
+    /**
+     * The class's {@link Handler} methods, or null until they are first needed. Classes registered through their
+     * generated {@link #dispatcher} with the default factory never need them.
+     */
+    @Nullable
+    private volatile HandlerMethods methods;
+
+    private ListenerMetadata(@Nonnull Class<?> type) {
+        this.type = type;
+        this.dispatcher = findDispatcher(type);
+    }
+
+    /**
+     * Gets the class's {@link Handler} methods, scanning the class for them the first time they are needed.
+     *
+     * @return The class's {@link Handler} methods.
+     */
+    @Nonnull
+    HandlerMethods getMethods() {
+        HandlerMethods methods = this.methods;
+        if (methods == null) {
+            synchronized (this) {
+                methods = this.methods;
+                if (methods == null) {
+                    methods = new HandlerMethods(this.type);
+                    this.methods = methods;
+                }
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Gets the metadata of the specified listener class.
+     *
+     * @param type The listener class.
+     * @return The class's metadata.
+     */
+    @Nonnull
+    static ListenerMetadata get(@Nonnull Class<? extends MessageListener> type) {
+        return CACHE.get(type);
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private static Optional<ListenerDispatcher<MessageListener>> findDispatcher(@Nonnull Class<?> type) {
+        Class<?> dispatcher;
+        try {
+            dispatcher = Class.forName(type.getName() + ListenerDispatcher.CLASS_SUFFIX, true, type.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return Optional.absent();
+        }
+        if (!ListenerDispatcher.class.isAssignableFrom(dispatcher)) {
+            return Optional.absent();
+        }
+        try {
+            return Optional.of((ListenerDispatcher<MessageListener>) dispatcher.getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            return Optional.absent();
+        }
+    }
+
+    /**
+     * The {@link Handler} methods of a listener class.
+     */
+    static final class HandlerMethods {
+        /**
+         * The class's valid {@link Handler}s.
+         */
+        @Nonnull
+        final ImmutableList<HandlerMethod> handlers;
+        /**
+         * The problems found with the class's invalid {@link Handler}s.
+         */
+        @Nonnull
+        final ImmutableList<IllegalArgumentException> errors;
+
+        private HandlerMethods(@Nonnull Class<?> type) {
+            ImmutableList.Builder<HandlerMethod> handlers = ImmutableList.builder();
+            ImmutableList.Builder<IllegalArgumentException> errors = ImmutableList.builder();
+            for (Method method : type.getMethods()) {
+                if (method.getAnnotation(Handler.class) != null) {
+                    try {
+                        handlers.add(new HandlerMethod(DescriptorUtil.getDescriptor(method), method));
+                    } catch (IllegalArgumentException e) {
+                        errors.add(e);
+                    }
+                }
+            }
+            this.handlers = handlers.build();
+            this.errors = errors.build();
+        }
+    }
+
+    /**
+     * A valid {@link Handler} method.
+     */
+    static final class HandlerMethod {
+        /**
+         * The type of message handled by the method.
+         */
+        @Nonnull
+        final Descriptor descriptor;
+        @Nonnull
+        final Method method;
+        /**
+         * The unbound handle of the method, or null if it could not be accessed.
+         */
+        @Nullable
+        final MethodHandle unbound;
+        /**
+         * The reason that {@link #unbound} could not be resolved, or null if it was.
+         */
+        @Nullable
+        final IllegalArgumentException unboundError;
+
+        private HandlerMethod(@Nonnull Descriptor descriptor, @Nonnull Method method) {
+            this.descriptor = descriptor;
+            this.method = method;
+            MethodHandle unbound = null;
+            IllegalArgumentException unboundError = null;
+            try {
+                unbound = MethodMessageExecutor.unreflect(method);
+            } catch (IllegalArgumentException e) {
+                unboundError = e;
+            }
+            this.unbound = unbound;
+            this.unboundError = unboundError;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.MapMaker;
+import com.google.protobuf.Message;
+import com.google.protobuf.TextFormat;
+import tc.oc.protobuf.packet.HandlerErrorReporter;
+import tc.oc.protobuf.packet.HandlerException;
+import tc.oc.protobuf.packet.MessageHandler;
+import tc.oc.protobuf.packet.MethodMessageHandler;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link HandlerErrorReporter} that logs handler exceptions to a {@link Logger}, rate limited per handler.
+ * <p/>
+ * Each handler is logged at most once per {@link #getInterval() interval}; the exceptions it throws in between are only
+ * counted, and the count is included in its next log record. Until the reporter is {@link #start(ThreadFactory)
+ * started}, records are logged on the thread that reports them. Once started, records are queued for a background
+ * thread that formats and logs them, so that a failing handler never waits on the logger; records that do not fit in
+ * the queue are counted and dropped.
+ */
+public class LoggingErrorReporter implements HandlerErrorReporter, Runnable, Closeable {
+    /**
+     * The default minimum time between log records of the same handler, in nanoseconds.
+     */
+    public static final long DEFAULT_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+    /**
+     * The default number of log records that can be queued for the background thread.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    @Nullable
+    private final Logger logger;
+    private final long interval;
+    /**
+     * The aggregated failures of each handler that has failed.
+     */
+    @Nonnull
+    private final ConcurrentMap<MessageHandler, Aggregate> aggregates = new MapMaker().weakKeys().makeMap();
+    @Nonnull
+    private final BlockingQueue<Failure> queue;
+    /**
+     * The number of log records dropped because {@link #queue} was full since the last record was logged.
+     */
+    @Nonnull
+    private final AtomicLong dropped = new AtomicLong();
+    private boolean started;
+    private volatile boolean running;
+
+    /**
+     * Creates a new LoggingErrorReporter with the {@link #DEFAULT_INTERVAL} and {@link #DEFAULT_CAPACITY}.
+     *
+     * @param logger The {@link Logger} to log exceptions to.
+     */
+    public LoggingErrorReporter(@Nullable Logger logger) {
+        this(logger, DEFAULT_INTERVAL, TimeUnit.NANOSECONDS, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new LoggingErrorReporter.
+     *
+     * @param logger   The {@link Logger} to log exceptions to.
+     * @param interval The minimum time between log records of the same handler; 0 logs every exception without
+     *                 rate limiting.
+     * @param unit     The unit of the interval.
+     * @param capacity The number of log records that can be queued for the background thread.
+     */
+    public LoggingErrorReporter(@Nullable Logger logger, long interval, @Nonnull TimeUnit unit, int capacity) {
+        Preconditions.checkArgument(interval >= 0, "LoggingErrorReporter constructor got negative interval %s", interval);
+        Preconditions.checkArgument(capacity > 0, "LoggingErrorReporter constructor got non-positive capacity %s", capacity);
+        this.logger = logger;
+        this.interval = Preconditions.checkNotNull(unit, "LoggingErrorReporter constructor got null TimeUnit").toNanos(interval);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Gets the minimum time between log records of the same handler.
+     *
+     * @return The interval, in nanoseconds.
+     */
+    public long getInterval() {
+        return this.interval;
+    }
+
+    /**
+     * Starts the background thread that logs the reported exceptions. The reporter can only be started once.
+     *
+     * @param threadFactory The factory used to create the thread.
+     * @return The started thread.
+     * @throws IllegalStateException If the reporter has already been started.
+     */
+    @Nonnull
+    public synchronized Thread start(@Nonnull ThreadFactory threadFactory) {
+        Preconditions.checkNotNull(threadFactory, "start() got null ThreadFactory");
+        Preconditions.checkState(!this.started, "LoggingErrorReporter has already been started");
+        Thread thread = Preconditions.checkNotNull(threadFactory.newThread(this), "start() got null Thread from ThreadFactory");
+        this.started = true;
+        this.running = true;
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Logs the queued exceptions until the reporter is closed, then logs any that are left.
+     */
+    @Override
+    public void run() {
+        try {
+            while (this.running) {
+                Failure failure = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (failure != null) {
+                    this.log(failure);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.running = false;
+            this.drain();
+        }
+    }
+
+    /**
+     * Stops the background thread once it has logged the queued exceptions. Exceptions reported afterwards are logged
+     * on the thread that reports them.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        // Log any exception queued by a thread that saw the reporter running after the background thread's last drain
+        this.drain();
+    }
+
+    /**
+     * Logs every queued exception on the calling thread.
+     */
+    private void drain() {
+        Failure failure;
+        while ((failure = this.queue.poll()) != null) {
+            this.log(failure);
+        }
+    }
+
+    @Override
+    public void handlerFailed(@Nonnull MessageHandler handler, @Nonnull List<? extends Message> messages, @Nonnull HandlerException exception) {
+        if (this.logger == null || !this.logger.isLoggable(Level.SEVERE)) {
+            return;
+        }
+        if (this.interval == 0) {
+            this.report(new Failure(handler, messages, exception, 0));
+            return;
+        }
+        Aggregate aggregate = this.aggregates.get(handler);
+        if (aggregate == null) {
+            Aggregate created = new Aggregate();
+            aggregate = this.aggregates.putIfAbsent(handler, created);
+            if (aggregate == null) {
+                aggregate = created;
+            }
+        }
+        long now = System.nanoTime();
+        long next = aggregate.next.get();
+        if (now - next < 0 || !aggregate.next.compareAndSet(next, now + this.interval)) {
+            aggregate.suppressed.incrementAndGet();
+            return;
+        }
+        this.report(new Failure(handler, messages, exception, aggregate.suppressed.getAndSet(0)));
+    }
+
+    /**
+     * Logs a reported exception on the calling thread, or queues it for the background thread if it is running.
+     *
+     * @param failure The reported exception.
+     */
+    private void report(@Nonnull Failure failure) {
+        if (!this.running) {
+            this.log(failure);
+        } else if (!this.queue.offer(failure)) {
+            this.dropped.incrementAndGet();
+        } else if (!this.running) {
+            // The reporter was closed while the exception was being queued, possibly after its last drain
+            this.drain();
+        }
+    }
+
+    /**
+     * Formats and logs a reported exception.
+     *
+     * @param failure The reported exception.
+     */
+    private void log(@Nonnull Failure failure) {
+        if (this.logger == null) {
+            return;
+        }
+        long dropped = this.dropped.getAndSet(0);
+        if (dropped > 0) {
+            this.logger.log(Level.WARNING, "Dropped " + dropped + " handler exceptions that could not be queued for logging");
+        }
+        StringBuilder builder = new StringBuilder("Exception in handler ");
+        if (failure.handler instanceof MethodMessageHandler) {
+            Method method = ((MethodMessageHandler) failure.handler).getMethod();
+            builder.append(method.getDeclaringClass().getName()).append('.').append(method.getName());
+        } else {
+            builder.append(failure.handler);
+        }
+        builder.append(" while handling ");
+        if (failure.messages.size() == 1) {
+            builder.append(failure.messages.get(0).getDescriptorForType().getFullName()).append(" {").append(TextFormat.shortDebugString(failure.messages.get(0))).append('}');
+        } else {
+            builder.append(failure.messages.size()).append(" messages of type ").append(failure.messages.get(0).getDescriptorForType().getFullName());
+        }
+        if (failure.suppressed > 0) {
+            builder.append(" (").append(failure.suppressed).append(" more exceptions suppressed since the last one)");
+        }
+        this.logger.log(Level.SEVERE, builder.toString(), failure.exception);
+    }
+
+    /**
+     * The failures of a handler.
+     */
+    private static final class Aggregate {
+        /**
+         * The earliest time at which the next exception may be logged.
+         */
+        @Nonnull
+        final AtomicLong next = new AtomicLong(System.nanoTime());
+        /**
+         * The number of exceptions that were not logged since the last one that was.
+         */
+        @Nonnull
+        final AtomicLong suppressed = new AtomicLong();
+    }
+
+    /**
+     * A reported exception, waiting to be logged.
+     */
+    private static final class Failure {
+        @Nonnull
+        final MessageHandler handler;
+        @Nonnull
+        final List<? extends Message> messages;
+        @Nonnull
+        final HandlerException exception;
+        final long suppressed;
+
+        Failure(@Nonnull MessageHandler handler, @Nonnull List<? extends Message> messages, @Nonnull HandlerException exception, long suppressed) {
+            this.handler = handler;
+            this.messages = messages;
+            this.exception = exception;
+            this.suppressed = suppressed;
+        }
+    }
+}
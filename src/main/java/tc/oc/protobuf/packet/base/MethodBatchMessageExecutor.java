@@ -0,0 +1,59 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Message;
+import tc.oc.protobuf.packet.BatchMessageHandler;
+import tc.oc.protobuf.packet.HandlerException;
+import tc.oc.protobuf.packet.util.DescriptorUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link MethodMessageExecutor} for batch {@link tc.oc.protobuf.packet.Handler} methods, which accept a {@link List} of
+ * messages.
+ */
+public class MethodBatchMessageExecutor extends MethodMessageExecutor implements BatchMessageHandler {
+    /**
+     * Creates a new MethodBatchMessageExecutor.
+     *
+     * @param parent The object to invoke the method on, or null if the method is static.
+     * @param method The batch handler method to invoke.
+     * @throws IllegalArgumentException If the method can not be accessed, is not static and has no parent, or is not a
+     *                                  batch handler.
+     */
+    public MethodBatchMessageExecutor(@Nullable Object parent, @Nonnull Method method) throws IllegalArgumentException {
+        this(parent, method, unreflect(checkBatch(method)));
+    }
+
+    MethodBatchMessageExecutor(@Nullable Object parent, @Nonnull Method method, @Nonnull MethodHandle unbound) throws IllegalArgumentException {
+        super(parent, method, unbound);
+    }
+
+    @Override
+    public void handle(@Nonnull Message msg) throws HandlerException {
+        Preconditions.checkNotNull(msg, "message");
+
+        this.handleAll(Collections.singletonList(msg));
+    }
+
+    @Override
+    public void handleAll(@Nonnull List<? extends Message> msgs) throws HandlerException {
+        Preconditions.checkNotNull(msgs, "messages");
+
+        try {
+            this.invoker.invokeExact(msgs);
+        } catch (Throwable t) {
+            throw HandlerException.wrap(t);
+        }
+    }
+
+    private static Method checkBatch(Method method) {
+        Preconditions.checkArgument(DescriptorUtil.isBatch(Preconditions.checkNotNull(method, "method")), "%s is not a batch handler", method);
+        return method;
+    }
+}
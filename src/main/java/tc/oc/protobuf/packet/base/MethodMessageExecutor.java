@@ -2,27 +2,99 @@ package tc.oc.protobuf.packet.base;
 
 import com.google.common.base.Preconditions;
 import com.google.protobuf.Message;
+import tc.oc.protobuf.packet.Handler;
 import tc.oc.protobuf.packet.HandlerException;
 import tc.oc.protobuf.packet.MessageHandler;
+import tc.oc.protobuf.packet.MessageHandlerFactory;
+import tc.oc.protobuf.packet.MessageListener;
+import tc.oc.protobuf.packet.MethodMessageHandler;
+import tc.oc.protobuf.packet.util.DescriptorUtil;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/**
+ * {@link MessageHandler} that invokes a {@link tc.oc.protobuf.packet.Handler} method.
+ * <p/>
+ * The method is resolved to a {@link MethodHandle} once, when the executor is created, so that handling a message does
+ * not pay for the access checks and argument array of {@link Method#invoke(Object, Object...)}.
+ */
+public class MethodMessageExecutor implements MethodMessageHandler {
+    /**
+     * The type that {@link #invoker} is adapted to.
+     */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Message.class);
+    /**
+     * The type that {@link #invoker} is adapted to for batch handlers.
+     */
+    private static final MethodType BATCH_INVOKER_TYPE = MethodType.methodType(void.class, List.class);
+    /**
+     * {@link MessageHandlerFactory} that creates MethodMessageExecutors.
+     */
+    public static final MessageHandlerFactory FACTORY = new MessageHandlerFactory() {
+        @Nonnull
+        @Override
+        public MessageHandler create(@Nonnull MessageListener listener, @Nonnull Method method) throws IllegalArgumentException {
+            return bind(listener, method, unreflect(method));
+        }
+    };
 
-public class MethodMessageExecutor implements MessageHandler {
     private final
     @Nullable
     Object parent;
     private final
     @Nonnull
     Method method;
+    private final
+    @Nullable
+    Handler annotation;
+    /**
+     * The method, bound to {@link #parent} if it is not static, adapted to accept any {@link Message} (or {@link List}
+     * for batch handlers).
+     */
+    final
+    @Nonnull
+    MethodHandle invoker;
 
-    public MethodMessageExecutor(@Nullable Object parent, @Nonnull Method method) {
+    /**
+     * Creates a new MethodMessageExecutor.
+     *
+     * @param parent The object to invoke the method on, or null if the method is static.
+     * @param method The method to invoke.
+     * @throws IllegalArgumentException If the method can not be accessed, is not static and has no parent, or is a
+     *                                  batch handler that should be invoked by a {@link MethodBatchMessageExecutor}.
+     */
+    public MethodMessageExecutor(@Nullable Object parent, @Nonnull Method method) throws IllegalArgumentException {
+        this(parent, method, unreflect(Preconditions.checkNotNull(method, "method")));
+        Preconditions.checkArgument(!DescriptorUtil.isBatch(method), "Batch handler %s must be invoked by a MethodBatchMessageExecutor", method);
+    }
+
+    /**
+     * Creates a new MethodMessageExecutor from a handle previously resolved by {@link #unreflect(Method)}.
+     *
+     * @param parent  The object to invoke the method on, or null if the method is static.
+     * @param method  The method to invoke.
+     * @param unbound The unbound handle of the method.
+     * @throws IllegalArgumentException If the method is not static and has no parent.
+     */
+    MethodMessageExecutor(@Nullable Object parent, @Nonnull Method method, @Nonnull MethodHandle unbound) throws IllegalArgumentException {
         Preconditions.checkNotNull(method, "method");
 
         this.parent = parent;
         this.method = method;
+        this.annotation = method.getAnnotation(Handler.class);
+        if (Modifier.isStatic(method.getModifiers())) {
+            this.invoker = unbound;
+        } else {
+            Preconditions.checkArgument(parent != null, "MethodMessageExecutor got null parent for non-static method %s", method);
+            this.invoker = unbound.bindTo(parent);
+        }
     }
 
     public
@@ -37,17 +109,63 @@ public class MethodMessageExecutor implements MessageHandler {
         return this.method;
     }
 
+    public
+    @Nullable
+    Handler getAnnotation() {
+        return this.annotation;
+    }
+
     public void handle(@Nonnull Message msg) throws HandlerException {
         Preconditions.checkNotNull(msg, "message");
 
         try {
-            this.method.invoke(this.parent, msg);
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (IllegalArgumentException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            throw new HandlerException(e.getCause());
+            this.invoker.invokeExact(msg);
+        } catch (Throwable t) {
+            throw HandlerException.wrap(t);
+        }
+    }
+
+    /**
+     * Creates the appropriate executor for the specified method from a handle previously resolved by {@link
+     * #unreflect(Method)}: a {@link MethodBatchMessageExecutor} for batch handlers, or a MethodMessageExecutor.
+     *
+     * @param parent  The object to invoke the method on, or null if the method is static.
+     * @param method  The method to invoke.
+     * @param unbound The unbound handle of the method.
+     * @return The new executor.
+     * @throws IllegalArgumentException If the method is not static and has no parent.
+     */
+    @Nonnull
+    static MethodMessageExecutor bind(@Nullable Object parent, @Nonnull Method method, @Nonnull MethodHandle unbound) throws IllegalArgumentException {
+        if (DescriptorUtil.isBatch(method)) {
+            return new MethodBatchMessageExecutor(parent, method, unbound);
+        }
+        return new MethodMessageExecutor(parent, method, unbound);
+    }
+
+    /**
+     * Resolves the unbound {@link MethodHandle} used to invoke the specified method. The handle is of type {@link
+     * #INVOKER_TYPE} (or {@link #BATCH_INVOKER_TYPE} for batch handlers) if the method is static, and otherwise takes
+     * the object to invoke the method on first.
+     *
+     * @param method The method to invoke.
+     * @return The unbound {@link MethodHandle}.
+     * @throws IllegalArgumentException If the method can not be accessed.
+     */
+    @Nonnull
+    static MethodHandle unreflect(@Nonnull Method method) throws IllegalArgumentException {
+        MethodHandle handle;
+        try {
+            // Handlers are commonly declared on non-public listener classes
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (SecurityException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Failed to access " + method + " due to security constraints", e);
+        }
+        MethodType type = DescriptorUtil.isBatch(method) ? BATCH_INVOKER_TYPE : INVOKER_TYPE;
+        if (Modifier.isStatic(method.getModifiers())) {
+            return handle.asType(type);
         }
+        return handle.asType(type.insertParameterTypes(0, Object.class));
     }
 }
@@ -0,0 +1,53 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Message;
+import tc.oc.protobuf.packet.MessageHandlerRegistry;
+import tc.oc.protobuf.packet.util.OrderedExecutor;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Handles messages with a {@link MessageHandlerRegistry} on a shared {@link Executor}, so that messages with the same
+ * routing key (such as the connection or entity they belong to) are handled one at a time in the order they were
+ * received, while messages with different keys are handled in parallel.
+ *
+ * @param <K> The type of routing key.
+ * @see OrderedExecutor
+ */
+public class OrderedMessageDispatcher<K> {
+    @Nonnull
+    private final MessageHandlerRegistry registry;
+    @Nonnull
+    private final OrderedExecutor<K> executor;
+
+    /**
+     * Creates a new OrderedMessageDispatcher.
+     *
+     * @param registry The registry used to handle messages.
+     * @param executor The executor that messages are handled on.
+     */
+    public OrderedMessageDispatcher(@Nonnull MessageHandlerRegistry registry, @Nonnull Executor executor) {
+        this.registry = Preconditions.checkNotNull(registry, "OrderedMessageDispatcher constructor got null MessageHandlerRegistry");
+        this.executor = new OrderedExecutor<>(Preconditions.checkNotNull(executor, "OrderedMessageDispatcher constructor got null Executor"));
+    }
+
+    /**
+     * Handles the specified message after every message previously dispatched with the same key has been handled.
+     *
+     * @param key     The routing key of the message.
+     * @param message The message to handle.
+     * @throws RejectedExecutionException If the executor rejected the message.
+     */
+    public void dispatch(@Nonnull K key, @Nonnull final Message message) throws RejectedExecutionException {
+        Preconditions.checkNotNull(message, "dispatch() got null Message");
+        this.executor.execute(key, new Runnable() {
+            @Override
+            public void run() {
+                registry.handle(message);
+            }
+        });
+    }
+}
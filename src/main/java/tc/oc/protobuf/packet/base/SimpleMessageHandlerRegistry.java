@@ -2,31 +2,77 @@ package tc.oc.protobuf.packet.base;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
+import com.google.common.primitives.Booleans;
 import com.google.protobuf.Descriptors.Descriptor;
 import com.google.protobuf.Message;
 import tc.oc.protobuf.packet.*;
-import tc.oc.protobuf.packet.util.DescriptorUtil;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.lang.reflect.Method;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * A simple implementation of {@link MessageHandlerRegistry}.
+ * <p/>
+ * This registry is thread-safe: {@link #handle(Message)} dispatches against an immutable snapshot of the registered
+ * handlers without locking, while registration changes are serialized and publish a new snapshot once complete.
+ * Registration is therefore comparatively expensive and is expected to happen far less often than dispatch.
  */
-public class SimpleMessageHandlerRegistry implements MessageHandlerRegistry {
+public class SimpleMessageHandlerRegistry implements BatchMessageHandlerRegistry {
     @Nullable
     private final Logger logger;
     /**
-     * A map of message types to their registered {@link MessageHandler}s.
+     * The factory used to create the {@link MessageHandler}s for registered {@link MessageListener}s.
+     */
+    @Nonnull
+    private final MessageHandlerFactory handlerFactory;
+    /**
+     * A map of message types to their registered {@link MessageHandler}s. Guarded by itself.
      */
     @Nonnull
     private final Multimap<Descriptor, MessageHandler> handlers = ArrayListMultimap.create();
+    /**
+     * A map of registered {@link MessageListener}s to the {@link MessageHandler}s created for them. Guarded by {@link
+     * #handlers}.
+     */
+    @Nonnull
+    private final Map<MessageListener, Multimap<Descriptor, MessageHandler>> listenerHandlers = new HashMap<>();
+    /**
+     * A map of message types to a prebuilt list of their registered {@link MessageHandler}s, used by {@link
+     * #handle(Message)} so that dispatch only visits the handlers for the message's own type. Rebuilt from {@link
+     * #handlers} whenever a message type's handlers change; the map and its lists are never modified once published.
+     */
+    @Nonnull
+    private volatile ImmutableMap<Descriptor, HandlerList> dispatch = ImmutableMap.of();
+    /**
+     * The sink that dispatch metrics are reported to, or null if they are not measured.
+     */
+    @Nullable
+    private volatile MetricsSink metrics;
+    /**
+     * The detector that sampled handler invocations are timed by, or null if they are not timed.
+     */
+    @Nullable
+    private volatile SlowHandlerDetector slowHandlerDetector;
+    /**
+     * The reporter that the exceptions thrown by handlers are passed to.
+     */
+    @Nonnull
+    private volatile HandlerErrorReporter errorReporter;
 
     /**
      * Creates a new SimpleMessageHandlerRegistry without a {@link Logger}.
@@ -41,7 +87,21 @@ public class SimpleMessageHandlerRegistry implements MessageHandlerRegistry {
      * @param logger The {@link Logger} to log errors to.
      */
     public SimpleMessageHandlerRegistry(@Nullable Logger logger) {
+        this(logger, MethodMessageExecutor.FACTORY);
+    }
+
+    /**
+     * Creates a new SimpleMessageHandlerRegistry with a {@link Logger} to log errors to, which creates the {@link
+     * MessageHandler}s for registered {@link MessageListener}s using the specified {@link MessageHandlerFactory}.
+     *
+     * @param logger         The {@link Logger} to log errors to.
+     * @param handlerFactory The {@link MessageHandlerFactory} used by {@link #registerAll(MessageListener)}.
+     */
+    public SimpleMessageHandlerRegistry(@Nullable Logger logger, @Nonnull MessageHandlerFactory handlerFactory) {
         this.logger = logger;
+        // Logs every exception on the handling thread, as the registry did before exceptions were reported
+        this.errorReporter = new LoggingErrorReporter(logger, 0, TimeUnit.NANOSECONDS, 1);
+        this.handlerFactory = Preconditions.checkNotNull(handlerFactory, "SimpleMessageHandlerRegistry constructor got null MessageHandlerFactory");
     }
 
     /**
@@ -53,17 +113,36 @@ public class SimpleMessageHandlerRegistry implements MessageHandlerRegistry {
      * @return Whether or not the handler was already registered.
      */
     public boolean register(@Nonnull final Descriptor messageDescriptor, @Nonnull final MessageHandler handler) {
-        return !this.handlers.put(Preconditions.checkNotNull(messageDescriptor, "register() got null messageDescriptor Descriptor"), Preconditions.checkNotNull(handler, "register() got null handler MessageHandler"));
+        Preconditions.checkNotNull(messageDescriptor, "register() got null messageDescriptor Descriptor");
+        Preconditions.checkNotNull(handler, "register() got null handler MessageHandler");
+        synchronized (this.handlers) {
+            boolean added = this.handlers.put(messageDescriptor, handler);
+            this.rebuildDispatch(messageDescriptor);
+            return !added;
+        }
     }
 
     /**
-     * Registers all of the {@link Handler}s in the specified {@link MessageListener}.
+     * Registers all of the {@link Handler}s in the specified {@link MessageListener}. If the listener's class has a
+     * {@link ListenerDispatcher} generated by {@link tc.oc.protobuf.packet.processor.HandlerProcessor} and this registry
+     * uses the default {@link MessageHandlerFactory}, the generated dispatcher is used instead of reflection.
      *
      * @param listener The {@link MessageListener} whose {@link Handler}s should be registered.
      * @return Whether or not the handler was already registered.
      */
     public boolean registerAll(@Nonnull final MessageListener listener) {
-        return !this.handlers.putAll(this.getHandlersFromListener(Preconditions.checkNotNull(listener, "registerAll() got null listener MessageListener"), true));
+        Multimap<Descriptor, MessageHandler> listenerHandlers = this.getHandlersFromListener(Preconditions.checkNotNull(listener, "registerAll() got null listener MessageListener"), true);
+        synchronized (this.handlers) {
+            Multimap<Descriptor, MessageHandler> registered = this.listenerHandlers.get(listener);
+            if (registered == null) {
+                this.listenerHandlers.put(listener, listenerHandlers);
+            } else {
+                registered.putAll(listenerHandlers);
+            }
+            boolean added = this.handlers.putAll(listenerHandlers);
+            this.rebuildDispatch(listenerHandlers.keySet());
+            return !added;
+        }
     }
 
     /**
@@ -75,7 +154,16 @@ public class SimpleMessageHandlerRegistry implements MessageHandlerRegistry {
      * @return Whether or not the handler was already un-registered.
      */
     public boolean unRegister(@Nonnull final Descriptor messageDescriptor, @Nonnull final MessageHandler handler) {
-        return !this.handlers.remove(Preconditions.checkNotNull(messageDescriptor, "unRegister() got null messageDescriptor Descriptor"), Preconditions.checkNotNull(handler, "unRegister() got null handler MessageHandler"));
+        Preconditions.checkNotNull(messageDescriptor, "unRegister() got null messageDescriptor Descriptor");
+        Preconditions.checkNotNull(handler, "unRegister() got null handler MessageHandler");
+        synchronized (this.handlers) {
+            boolean removed = this.handlers.remove(messageDescriptor, handler);
+            for (Multimap<Descriptor, MessageHandler> registered : this.listenerHandlers.values()) {
+                registered.remove(messageDescriptor, handler);
+            }
+            this.rebuildDispatch(messageDescriptor);
+            return !removed;
+        }
     }
 
     /**
@@ -85,77 +173,394 @@ public class SimpleMessageHandlerRegistry implements MessageHandlerRegistry {
      * @return Whether or not all of the descriptor's handlers were already unregistered.
      */
     public boolean unRegisterAll(@Nonnull final Descriptor messageDescriptor) {
-        return this.handlers.removeAll(Preconditions.checkNotNull(messageDescriptor, "unRegisterAll() got null messageDescriptor Descriptor")).isEmpty();
+        Preconditions.checkNotNull(messageDescriptor, "unRegisterAll() got null messageDescriptor Descriptor");
+        synchronized (this.handlers) {
+            boolean empty = this.handlers.removeAll(messageDescriptor).isEmpty();
+            for (Multimap<Descriptor, MessageHandler> registered : this.listenerHandlers.values()) {
+                registered.removeAll(messageDescriptor);
+            }
+            this.rebuildDispatch(messageDescriptor);
+            return empty;
+        }
     }
 
     /**
-     * Un-registers all of the {@link MessageListener}'s {@link Handler}s.
+     * Un-registers all of the {@link MessageListener}'s {@link Handler}s that were registered with {@link
+     * #registerAll(MessageListener)}.
      *
      * @param listener The {@link MessageListener} whose {@link Handler}s should be unregistered.
+     * @return Whether or not any of the listener's handlers were registered.
      */
     public boolean unRegisterAll(@Nonnull final MessageListener listener) {
         Preconditions.checkNotNull(listener, "unRegisterAll() got null listener MessageListener");
-        boolean removed = false;
-        for (Iterator<Map.Entry<Descriptor, MessageHandler>> it = this.handlers.entries().iterator(); it.hasNext(); ) {
-            Map.Entry<Descriptor, MessageHandler> entry = it.next();
-            if (entry.getValue() instanceof MethodMessageExecutor) {
-                MethodMessageExecutor methodHandler = (MethodMessageExecutor) entry.getValue();
-                if (listener.equals(methodHandler.getParent())) {
-                    it.remove();
-                    removed = true;
-                }
+        synchronized (this.handlers) {
+            Multimap<Descriptor, MessageHandler> registered = this.listenerHandlers.remove(listener);
+            if (registered == null || registered.isEmpty()) {
+                return false;
+            }
+            for (Map.Entry<Descriptor, MessageHandler> entry : registered.entries()) {
+                this.handlers.remove(entry.getKey(), entry.getValue());
             }
+            this.rebuildDispatch(registered.keySet());
+            return true;
         }
-
-        return removed;
     }
 
     /**
-     * Handles the specified {@link Message}.
+     * Handles the specified {@link Message}, invoking its handlers in order of priority within a new {@link Dispatch}.
      *
      * @param message The {@link Message} to be handled.
-     * @return The number of handlers that were invoked.
+     * @return The number of handlers that were invoked, not counting handlers skipped because the dispatch was
+     *         cancelled.
      */
     public int handle(@Nonnull Message message) {
         Preconditions.checkNotNull(message, "handle() got null Message");
+        HandlerList handlerList = this.getHandlerList(message.getDescriptorForType(), 1);
+        if (handlerList == null) {
+            return 0;
+        }
+        return this.handleInline(handlerList, message);
+    }
+
+    /**
+     * Handles a message by invoking all of its handlers on the calling thread, in order of priority within a new {@link
+     * Dispatch}.
+     *
+     * @param handlerList The handlers of the message's type.
+     * @param message     The message.
+     * @return The number of handlers that completed without throwing an exception.
+     */
+    final int handleInline(@Nonnull HandlerList handlerList, @Nonnull Message message) {
         int numHandled = 0;
-        for (Map.Entry<Descriptor, MessageHandler> entry : this.handlers.entries()) {
-            if (entry.getKey().equals(message.getDescriptorForType())) {
-                try {
-                    entry.getValue().handle(message);
+        Dispatch dispatch = Dispatch.begin();
+        try {
+            for (int i = 0; i < handlerList.handlers.length; i++) {
+                if (handlerList.ignoreCancelled[i] && dispatch.isCancelled()) {
+                    continue;
+                }
+                if (this.invoke(handlerList.handlers[i], message)) {
                     numHandled++;
-                } catch (HandlerException e) {
-                    this.logException("Exception while handling " + message, e);
                 }
             }
+        } finally {
+            dispatch.end();
         }
         return numHandled;
     }
 
-    private Multimap<Descriptor, MethodMessageExecutor> getHandlersFromListener(MessageListener listener, boolean logErrors) {
-        Multimap<Descriptor, MethodMessageExecutor> handlers = ArrayListMultimap.create();
-        for (Method method : listener.getClass().getMethods()) {
-            if (method.getAnnotation(Handler.class) != null) {
-                Descriptor desc = null;
-                try {
-                    desc = DescriptorUtil.getDescriptor(method);
-                } catch (IllegalArgumentException e) {
-                    if (logErrors) {
-                        if (e.getCause() != null) {
-                            this.logException(e.getMessage(), e.getCause());
-                        } else {
-                            this.log(e.getMessage());
-                        }
-                    }
+    /**
+     * Handles a batch of {@link Message}s, grouped by type.
+     *
+     * @param messages The {@link Message}s to be handled.
+     * @return The number of handler invocations, counting each call to a {@link BatchMessageHandler} once.
+     */
+    public int handleAll(@Nonnull List<? extends Message> messages) {
+        Preconditions.checkNotNull(messages, "handleAll() got null List<Message>");
+        if (messages.size() == 1) {
+            return this.handle(messages.get(0));
+        }
+        Map<Descriptor, List<Message>> groups = new LinkedHashMap<>();
+        for (Message message : messages) {
+            Descriptor messageDescriptor = Preconditions.checkNotNull(message, "handleAll() got null Message").getDescriptorForType();
+            List<Message> group = groups.get(messageDescriptor);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(messageDescriptor, group);
+            }
+            group.add(message);
+        }
+        int numHandled = 0;
+        for (Map.Entry<Descriptor, List<Message>> group : groups.entrySet()) {
+            HandlerList handlerList = this.getHandlerList(group.getKey(), group.getValue().size());
+            if (handlerList != null) {
+                numHandled += this.handleGroup(handlerList, group.getValue());
+            }
+        }
+        return numHandled;
+    }
+
+    /**
+     * Handles a group of messages of the same type, each of which can be cancelled separately.
+     *
+     * @param handlerList The handlers of the messages' type.
+     * @param group       The messages.
+     * @return The number of handler invocations, counting each call to a {@link BatchMessageHandler} once.
+     */
+    int handleGroup(@Nonnull HandlerList handlerList, @Nonnull List<Message> group) {
+        boolean[] cancelled = new boolean[group.size()];
+        int numHandled = 0;
+        Dispatch dispatch = Dispatch.begin();
+        try {
+            for (int i = 0; i < handlerList.handlers.length; i++) {
+                numHandled += this.invokeGroup(handlerList.handlers[i], handlerList.batch[i], handlerList.ignoreCancelled[i], group, cancelled, dispatch);
+            }
+        } finally {
+            dispatch.end();
+        }
+        return numHandled;
+    }
+
+    /**
+     * Invokes the specified handler for a group of messages of the same type, reporting any {@link HandlerException}s
+     * it throws. Other handlers are invoked once per message, with the dispatch reset to that message's cancellation
+     * state; a {@link BatchMessageHandler} is invoked once, with the dispatch cancelled only if every message it is
+     * passed is, and cancelling or un-cancelling the dispatch applies to all of them.
+     *
+     * @param handler         The handler to invoke.
+     * @param batch           Whether the handler is a {@link BatchMessageHandler}.
+     * @param ignoreCancelled Whether the handler is skipped for cancelled messages.
+     * @param group           The messages to handle.
+     * @param cancelled       Whether each message of the group is cancelled, updated as the handler cancels them.
+     * @param dispatch        The current dispatch, which the handler is invoked within.
+     * @return The number of invocations that completed without throwing an exception.
+     */
+    int invokeGroup(@Nonnull MessageHandler handler, boolean batch, boolean ignoreCancelled, @Nonnull List<Message> group, @Nonnull boolean[] cancelled, @Nonnull Dispatch dispatch) {
+        if (!batch) {
+            int numHandled = 0;
+            for (int i = 0; i < cancelled.length; i++) {
+                if (ignoreCancelled && cancelled[i]) {
+                    continue;
+                }
+                dispatch.setCancelled(cancelled[i]);
+                if (this.invoke(handler, group.get(i))) {
+                    numHandled++;
                 }
-                if (desc != null) {
-                    handlers.put(desc, new MethodMessageExecutor(listener, method));
+                cancelled[i] = dispatch.isCancelled();
+            }
+            return numHandled;
+        }
+        List<Message> messages = group;
+        if (ignoreCancelled && Booleans.contains(cancelled, true)) {
+            messages = new ArrayList<>();
+            for (int i = 0; i < cancelled.length; i++) {
+                if (!cancelled[i]) {
+                    messages.add(group.get(i));
+                }
+            }
+            if (messages.isEmpty()) {
+                return 0;
+            }
+        }
+        boolean wasCancelled = !Booleans.contains(cancelled, false);
+        dispatch.setCancelled(wasCancelled);
+        MetricsSink metrics = this.metrics;
+        SlowHandlerDetector detector = this.slowHandlerDetector;
+        SlowHandlerDetector.Sample sample = detector != null ? detector.begin(handler, messages.get(0).getDescriptorForType()) : null;
+        long start = metrics != null ? System.nanoTime() : 0;
+        boolean failed = true;
+        try {
+            ((BatchMessageHandler) handler).handleAll(messages);
+            failed = false;
+            return 1;
+        } catch (HandlerException e) {
+            this.errorReporter.handlerFailed(handler, messages, e);
+            return 0;
+        } finally {
+            if (metrics != null) {
+                metrics.invoked(messages.get(0).getDescriptorForType(), System.nanoTime() - start, failed);
+            }
+            if (sample != null) {
+                detector.end(sample);
+            }
+            if (dispatch.isCancelled() != wasCancelled) {
+                // Messages skipped for being cancelled stay cancelled either way
+                Arrays.fill(cancelled, dispatch.isCancelled());
+            }
+        }
+    }
+
+    /**
+     * Gets whether any handlers are registered for the specified type of message.
+     *
+     * @param messageDescriptor The type of message.
+     * @return Whether {@link #handle(Message)} would invoke any handlers for a message of the type.
+     */
+    public boolean hasHandlers(@Nonnull Descriptor messageDescriptor) {
+        return this.dispatch.containsKey(Preconditions.checkNotNull(messageDescriptor, "hasHandlers() got null messageDescriptor Descriptor"));
+    }
+
+    /**
+     * Gets the current list of handlers for the specified type of message, to dispatch messages to.
+     *
+     * @param messageDescriptor The type of message.
+     * @param messages          The number of messages being dispatched, which are reported to the {@link
+     *                          MetricsSink} as unhandled if there are no handlers.
+     * @return The handlers, or null if there are none.
+     */
+    @Nullable
+    HandlerList getHandlerList(@Nonnull Descriptor messageDescriptor, int messages) {
+        HandlerList handlerList = this.dispatch.get(messageDescriptor);
+        if (handlerList == null) {
+            MetricsSink metrics = this.metrics;
+            if (metrics != null) {
+                metrics.unhandled(messageDescriptor, messages);
+            }
+        }
+        return handlerList;
+    }
+
+    /**
+     * Sets the sink that dispatch metrics are reported to: unhandled messages, and the latency and failures of every
+     * handler invocation. Without a sink, nothing is measured.
+     *
+     * @param metrics The sink, or null to stop reporting metrics.
+     */
+    public void setMetricsSink(@Nullable MetricsSink metrics) {
+        this.metrics = metrics;
+    }
+
+    @Nullable
+    public MetricsSink getMetricsSink() {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the detector that reports handler invocations taking longer than its threshold. Without a detector,
+     * invocations are not timed for it.
+     *
+     * @param detector The detector, or null to stop detecting slow handlers.
+     */
+    public void setSlowHandlerDetector(@Nullable SlowHandlerDetector detector) {
+        this.slowHandlerDetector = detector;
+    }
+
+    @Nullable
+    public SlowHandlerDetector getSlowHandlerDetector() {
+        return this.slowHandlerDetector;
+    }
+
+    /**
+     * Sets the reporter that the exceptions thrown by handlers are passed to. By default, they are passed to a {@link
+     * LoggingErrorReporter} that logs every exception to this registry's {@link Logger} on the handling thread, without
+     * rate limiting; set a reporter with an interval and {@link LoggingErrorReporter#start(java.util.concurrent.ThreadFactory) start} it to
+     * rate limit exceptions and log them in the background.
+     *
+     * @param errorReporter The reporter.
+     */
+    public void setErrorReporter(@Nonnull HandlerErrorReporter errorReporter) {
+        this.errorReporter = Preconditions.checkNotNull(errorReporter, "setErrorReporter() got null HandlerErrorReporter");
+    }
+
+    @Nonnull
+    public HandlerErrorReporter getErrorReporter() {
+        return this.errorReporter;
+    }
+
+    /**
+     * Invokes the specified handler, reporting any {@link HandlerException} it throws.
+     *
+     * @param handler The handler to invoke.
+     * @param message The message to handle.
+     * @return Whether the handler completed without throwing an exception.
+     */
+    boolean invoke(@Nonnull MessageHandler handler, @Nonnull Message message) {
+        MetricsSink metrics = this.metrics;
+        SlowHandlerDetector detector = this.slowHandlerDetector;
+        if (metrics == null && detector == null) {
+            try {
+                handler.handle(message);
+                return true;
+            } catch (HandlerException e) {
+                this.errorReporter.handlerFailed(handler, Collections.singletonList(message), e);
+                return false;
+            }
+        }
+        SlowHandlerDetector.Sample sample = detector != null ? detector.begin(handler, message.getDescriptorForType()) : null;
+        long start = metrics != null ? System.nanoTime() : 0;
+        boolean failed = true;
+        try {
+            handler.handle(message);
+            failed = false;
+            return true;
+        } catch (HandlerException e) {
+            this.errorReporter.handlerFailed(handler, Collections.singletonList(message), e);
+            return false;
+        } finally {
+            if (metrics != null) {
+                metrics.invoked(message.getDescriptorForType(), System.nanoTime() - start, failed);
+            }
+            if (sample != null) {
+                detector.end(sample);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the entry of {@link #dispatch} for the specified message type.
+     *
+     * @param messageDescriptor The message type whose handlers have changed.
+     */
+    private void rebuildDispatch(Descriptor messageDescriptor) {
+        this.rebuildDispatch(ImmutableSet.of(messageDescriptor));
+    }
+
+    /**
+     * Rebuilds the entries of {@link #dispatch} for the specified message types and publishes the result. Must be
+     * called while holding the lock on {@link #handlers}.
+     *
+     * @param messageDescriptors The message types whose handlers have changed.
+     */
+    private void rebuildDispatch(Set<Descriptor> messageDescriptors) {
+        if (messageDescriptors.isEmpty()) {
+            return;
+        }
+        Map<Descriptor, HandlerList> dispatch = new HashMap<>(this.dispatch);
+        for (Descriptor messageDescriptor : messageDescriptors) {
+            Collection<MessageHandler> messageHandlers = this.handlers.get(messageDescriptor);
+            if (messageHandlers.isEmpty()) {
+                dispatch.remove(messageDescriptor);
+            } else {
+                dispatch.put(messageDescriptor, new HandlerList(messageHandlers));
+            }
+        }
+        this.dispatch = ImmutableMap.copyOf(dispatch);
+    }
+
+    private Multimap<Descriptor, MessageHandler> getHandlersFromListener(MessageListener listener, boolean logErrors) {
+        Multimap<Descriptor, MessageHandler> handlers = ArrayListMultimap.create();
+        ListenerMetadata metadata = ListenerMetadata.get(listener.getClass());
+        boolean defaultFactory = this.handlerFactory == MethodMessageExecutor.FACTORY;
+        if (defaultFactory && metadata.dispatcher.isPresent()) {
+            metadata.dispatcher.get().createHandlers(listener, handlers);
+            return handlers;
+        }
+        ListenerMetadata.HandlerMethods methods = metadata.getMethods();
+        if (logErrors) {
+            for (IllegalArgumentException e : methods.errors) {
+                this.logInvalidHandler(e);
+            }
+        }
+        for (ListenerMetadata.HandlerMethod handlerMethod : methods.handlers) {
+            try {
+                if (!defaultFactory) {
+                    handlers.put(handlerMethod.descriptor, this.handlerFactory.create(listener, handlerMethod.method));
+                } else if (handlerMethod.unbound != null) {
+                    handlers.put(handlerMethod.descriptor, MethodMessageExecutor.bind(listener, handlerMethod.method, handlerMethod.unbound));
+                } else {
+                    throw handlerMethod.unboundError;
+                }
+            } catch (IllegalArgumentException e) {
+                if (logErrors) {
+                    this.logInvalidHandler(e);
                 }
             }
         }
         return handlers;
     }
 
+    /**
+     * Logs the reason that a {@link Handler} could not be registered to {@link #logger}.
+     *
+     * @param e The problem with the {@link Handler}.
+     */
+    private void logInvalidHandler(IllegalArgumentException e) {
+        if (e.getCause() != null) {
+            this.logException(e.getMessage(), e.getCause());
+        } else {
+            this.log(e.getMessage());
+        }
+    }
+
     /**
      * Logs an error to {@link #logger}.
      *
@@ -173,8 +578,8 @@ public class SimpleMessageHandlerRegistry implements MessageHandlerRegistry {
      * @param message   The message to be displayed.
      * @param throwable The exception to be logged.
      */
-    private void logException(String message, Throwable throwable) {
-        if (this.logger != null) {
+    void logException(String message, Throwable throwable) {
+        if (this.logger != null && this.logger.isLoggable(Level.SEVERE)) {
             this.logger.log(Level.SEVERE, message, throwable);
         }
     }
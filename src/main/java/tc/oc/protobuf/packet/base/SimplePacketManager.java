@@ -1,32 +1,86 @@
 package tc.oc.protobuf.packet.base;
 
 import com.google.common.base.Preconditions;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Descriptors;
 import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
+import com.google.protobuf.WireFormat;
+import tc.oc.protobuf.packet.BatchMessageHandlerRegistry;
 import tc.oc.protobuf.packet.MessageHandlerRegistry;
+import tc.oc.protobuf.packet.MetricsSink;
 import tc.oc.protobuf.packet.PacketManager;
+import tc.oc.protobuf.packet.PacketTemplate;
+import tc.oc.protobuf.packet.util.ByteBufferInputStream;
+import tc.oc.protobuf.packet.util.ByteBufferOutputStream;
+import tc.oc.protobuf.packet.util.DescriptorUtil;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * Simple implementation of {@link PacketManager}.
+ * <p/>
+ * Instances are thread-safe: the extension mappings are only written by the constructor, and every packet is built
+ * with a builder of its own.
  *
  * @param <T> The type of {@link Message} that will be extended.
  */
 public final class SimplePacketManager<T extends Message> implements PacketManager<T> {
     /**
-     * The default builder for the message's type.
+     * The number of bits of a wire format tag that hold its wire type, from {@link WireFormat}.
      */
-    private final Message.Builder builder;
+    private static final int TAG_TYPE_BITS = 3;
+    /**
+     * The largest direct buffer that is copied into a thread's reusable {@link #SCRATCH} array to be parsed; larger
+     * buffers are streamed from instead, so that no thread holds on to a large array.
+     */
+    private static final int MAX_SCRATCH_SIZE = 64 << 10;
+    /**
+     * The largest buffer used to write to an {@link OutputStream}, which is the default buffer size of {@link
+     * CodedOutputStream}.
+     */
+    private static final int MAX_OUTPUT_BUFFER_SIZE = 4096;
+    /**
+     * Each thread's array that direct buffers are copied into to be parsed, or null while the thread's array is in use
+     * by a parse that is still handling extensions, so that a handler parsing another buffer does not overwrite it.
+     * Shared by every manager, so that each thread holds at most one array however many managers it parses with.
+     */
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<>();
+    /**
+     * The base message, whose type new builders are created for.
+     */
+    private final T packet;
     /**
      * A map of the message's extended message field types and their {@link com.google.protobuf.ExtensionRegistry.ExtensionInfo}
      * objects.
      */
     private final Map<Descriptors.Descriptor, ExtensionRegistry.ExtensionInfo> descriptorMapping = new HashMap<>();
+    /**
+     * A map of the wire format tags of the message's extended message fields to their {@link
+     * com.google.protobuf.ExtensionRegistry.ExtensionInfo} objects. Repeated message fields are never packed, so each
+     * element of a repeated extension is written with the same tag as a non-repeated one.
+     */
+    private final Map<Integer, ExtensionRegistry.ExtensionInfo> tagMapping = new HashMap<>();
+    /**
+     * The {@link ExtensionRegistry} used when decoding extensions from serialized packets.
+     */
+    private final ExtensionRegistry extensionRegistry;
+    /**
+     * The sink that parsing metrics are reported to, or null if they are not measured.
+     */
+    @Nullable
+    private volatile MetricsSink metrics;
 
     /**
      * Creates a new {@link SimplePacketManager}, using the specified {@link Message} as a reference of sorts for
@@ -38,15 +92,34 @@ public final class SimplePacketManager<T extends Message> implements PacketManag
      *                          disregarded.
      */
     public SimplePacketManager(@Nonnull final T packet, @Nonnull final ExtensionRegistry extensionRegistry) {
-        this.builder = Preconditions.checkNotNull(packet, "SimplePacketManager constructor got null Message").newBuilderForType();
-        Set<ExtensionRegistry.ExtensionInfo> extensionInfoSet = Preconditions.checkNotNull(extensionRegistry, "SimplePacketManager constructor got null ExtensionRegistry").getExtensions();
+        this.packet = Preconditions.checkNotNull(packet, "SimplePacketManager constructor got null Message");
+        this.extensionRegistry = Preconditions.checkNotNull(extensionRegistry, "SimplePacketManager constructor got null ExtensionRegistry");
+        Set<ExtensionRegistry.ExtensionInfo> extensionInfoSet = extensionRegistry.getExtensions();
         for (ExtensionRegistry.ExtensionInfo extension : extensionInfoSet) {
             if (extension.descriptor.getJavaType().equals(Descriptors.FieldDescriptor.JavaType.MESSAGE)) {
                 descriptorMapping.put(extension.descriptor.getMessageType(), extension);
+                if (extension.descriptor.getContainingType() == packet.getDescriptorForType()) {
+                    tagMapping.put(makeTag(extension.descriptor), extension);
+                }
             }
         }
     }
 
+    /**
+     * Sets the sink that parsing metrics are reported to: every extension parsed, and every serialized extension that
+     * was skipped for having no handlers. Without a sink, nothing is measured.
+     *
+     * @param metrics The sink, or null to stop reporting metrics.
+     */
+    public void setMetricsSink(@Nullable MetricsSink metrics) {
+        this.metrics = metrics;
+    }
+
+    @Nullable
+    public MetricsSink getMetricsSink() {
+        return this.metrics;
+    }
+
     /**
      * Parses the specified message, notifying the {@link MessageHandlerRegistry}'s registered {@link
      * tc.oc.protobuf.packet.Handler}s of the found extensions.
@@ -59,28 +132,418 @@ public final class SimplePacketManager<T extends Message> implements PacketManag
     public int parse(@Nonnull final T packet, @Nonnull final MessageHandlerRegistry registry) {
         Preconditions.checkNotNull(registry, "parse() got null MessageHandlerRegistry");
         Preconditions.checkNotNull(packet, "parse() got null Message");
+        MetricsSink metrics = this.metrics;
         int numParsed = 0;
-        for (ExtensionRegistry.ExtensionInfo extension : descriptorMapping.values()) {
-            if (packet.hasField(extension.descriptor)) {
-                numParsed += registry.handle((Message) packet.getField(extension.descriptor));
+        // Only visit the fields that are actually set, in field number order
+        for (Map.Entry<Descriptors.FieldDescriptor, Object> field : packet.getAllFields().entrySet()) {
+            if (!this.isExtension(field.getKey())) {
+                continue;
+            }
+            if (field.getKey().isRepeated()) {
+                for (Object message : (List<?>) field.getValue()) {
+                    if (metrics != null) {
+                        metrics.parsed(field.getKey().getMessageType());
+                    }
+                    numParsed += registry.handle((Message) message);
+                }
+            } else {
+                if (metrics != null) {
+                    metrics.parsed(field.getKey().getMessageType());
+                }
+                numParsed += registry.handle((Message) field.getValue());
             }
         }
         return numParsed;
     }
 
+    /**
+     * Parses the specified messages as one batch, notifying the {@link BatchMessageHandlerRegistry}'s registered {@link
+     * tc.oc.protobuf.packet.Handler}s of the extensions found across all of them with a single {@link
+     * BatchMessageHandlerRegistry#handleAll(List)} call, so that each type of extension is looked up once per batch.
+     *
+     * @param packets  The messages to be parsed.
+     * @param registry The registry to be used to handle found extensions.
+     * @return The number of handler invocations, as returned by {@link BatchMessageHandlerRegistry#handleAll(List)}.
+     */
+    public int parseAll(@Nonnull final List<? extends T> packets, @Nonnull final BatchMessageHandlerRegistry registry) {
+        Preconditions.checkNotNull(registry, "parseAll() got null BatchMessageHandlerRegistry");
+        Preconditions.checkNotNull(packets, "parseAll() got null List<Message>");
+        MetricsSink metrics = this.metrics;
+        List<Message> messages = new ArrayList<>();
+        for (T packet : packets) {
+            for (Map.Entry<Descriptors.FieldDescriptor, Object> field : packet.getAllFields().entrySet()) {
+                if (!this.isExtension(field.getKey())) {
+                    continue;
+                }
+                if (field.getKey().isRepeated()) {
+                    for (Object message : (List<?>) field.getValue()) {
+                        messages.add((Message) message);
+                    }
+                } else {
+                    messages.add((Message) field.getValue());
+                }
+            }
+        }
+        if (metrics != null) {
+            for (Message message : messages) {
+                metrics.parsed(message.getDescriptorForType());
+            }
+        }
+        return messages.isEmpty() ? 0 : registry.handleAll(messages);
+    }
+
+    /**
+     * Parses a serialized message from the specified input, notifying the {@link MessageHandlerRegistry}'s registered
+     * {@link tc.oc.protobuf.packet.Handler}s of the found extensions.
+     * <p/>
+     * Unlike {@link #parse(Message, MessageHandlerRegistry)}, the message itself is never built: extensions are decoded
+     * and handled one at a time as they are read, and extensions without any registered handlers (as well as the
+     * message's other fields) are skipped over without being decoded at all. A non-repeated extension that occurs more
+     * than once is handled once per occurrence rather than merged, and the elements of a repeated extension are handled
+     * one at a time in the order they were written.
+     *
+     * @param input    The input to read the serialized message from, until its end or its current limit.
+     * @param registry The registry to be used to handle found extensions.
+     * @return The number of extensions handled, <b><i>not</i></b> the number of extensions parsed or the number of
+     *         extensions that the message contained.
+     * @throws IOException If the message could not be read or is malformed. Extensions read before the error will
+     *                     have already been handled.
+     */
+    public int parse(@Nonnull final CodedInputStream input, @Nonnull final MessageHandlerRegistry registry) throws IOException {
+        Preconditions.checkNotNull(registry, "parse() got null MessageHandlerRegistry");
+        Preconditions.checkNotNull(input, "parse() got null CodedInputStream");
+        MetricsSink metrics = this.metrics;
+        int numParsed = 0;
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            ExtensionRegistry.ExtensionInfo extension = this.tagMapping.get(tag);
+            if (extension == null || !registry.hasHandlers(extension.descriptor.getMessageType())) {
+                if (extension != null && metrics != null) {
+                    metrics.unhandled(extension.descriptor.getMessageType(), 1);
+                }
+                if (!input.skipField(tag)) {
+                    break;
+                }
+                continue;
+            }
+            Message.Builder builder = extension.defaultInstance.newBuilderForType();
+            input.readMessage(builder, this.extensionRegistry);
+            Message message = builder.buildPartial();
+            if (!message.isInitialized()) {
+                throw new InvalidProtocolBufferException("Extension " + extension.descriptor.getFullName() + " is missing required fields");
+            }
+            if (metrics != null) {
+                metrics.parsed(extension.descriptor.getMessageType());
+            }
+            numParsed += registry.handle(message);
+        }
+        return numParsed;
+    }
+
+    /**
+     * Parses a serialized message from the specified range of an array, notifying the {@link MessageHandlerRegistry}'s
+     * registered {@link tc.oc.protobuf.packet.Handler}s of the found extensions.
+     *
+     * @param data     The array containing the serialized message.
+     * @param offset   The offset of the serialized message in the array.
+     * @param length   The length of the serialized message.
+     * @param registry The registry to be used to handle found extensions.
+     * @return The number of extensions handled, <b><i>not</i></b> the number of extensions parsed or the number of
+     *         extensions that the message contained.
+     * @throws IOException If the message is malformed.
+     * @see #parse(CodedInputStream, MessageHandlerRegistry)
+     */
+    public int parse(@Nonnull final byte[] data, final int offset, final int length, @Nonnull final MessageHandlerRegistry registry) throws IOException {
+        Preconditions.checkNotNull(data, "parse() got null byte[]");
+        Preconditions.checkPositionIndexes(offset, offset + length, data.length);
+        return this.parse(CodedInputStream.newInstance(data, offset, length), registry);
+    }
+
+    /**
+     * Parses a serialized message from the remaining bytes of the specified buffer, notifying the {@link
+     * MessageHandlerRegistry}'s registered {@link tc.oc.protobuf.packet.Handler}s of the found extensions. Heap
+     * buffers are read in place. Direct buffers of up to 64 KiB are copied into an array that each thread reuses, and
+     * larger direct buffers are streamed from. Once the message has been parsed, the buffer's position is advanced to
+     * its limit.
+     *
+     * @param data     The buffer containing the serialized message.
+     * @param registry The registry to be used to handle found extensions.
+     * @return The number of extensions handled, <b><i>not</i></b> the number of extensions parsed or the number of
+     *         extensions that the message contained.
+     * @throws IOException If the message is malformed, in which case a heap buffer's position is left unchanged and a
+     *                     direct buffer's position is left anywhere up to its limit.
+     * @see #parse(CodedInputStream, MessageHandlerRegistry)
+     */
+    public int parse(@Nonnull final ByteBuffer data, @Nonnull final MessageHandlerRegistry registry) throws IOException {
+        Preconditions.checkNotNull(data, "parse() got null ByteBuffer");
+        if (!data.hasArray()) {
+            int length = data.remaining();
+            if (length > MAX_SCRATCH_SIZE) {
+                return this.parse(CodedInputStream.newInstance(new ByteBufferInputStream(data)), registry);
+            }
+            byte[] scratch = SCRATCH.get();
+            if (scratch == null || scratch.length < length) {
+                scratch = new byte[Math.max(length, 1024)];
+            }
+            SCRATCH.set(null);
+            try {
+                data.get(scratch, 0, length);
+                return this.parse(CodedInputStream.newInstance(scratch, 0, length), registry);
+            } finally {
+                SCRATCH.set(scratch);
+            }
+        }
+        int numParsed = this.parse(CodedInputStream.newInstance(data.array(), data.arrayOffset() + data.position(), data.remaining()), registry);
+        data.position(data.limit());
+        return numParsed;
+    }
+
+    /**
+     * Partially builds a new message, setting the specified {@link Message} to its relative extension.
+     *
+     * @param message The message to be added as an extension.
+     * @return The partially built message.
+     * @throws IllegalArgumentException If the message's type is not an extension of the base message.
+     * @see #build(Message...)
+     */
+    @Nonnull
+    public T build(@Nonnull final Message message) {
+        Preconditions.checkNotNull(message, "build() got null Message");
+        return this.buildPacket(this.packet.newBuilderForType().setField(this.getField(message.getDescriptorForType()), message));
+    }
+
+    /**
+     * Partially builds a new message, setting the specified {@link Message}s to their relative extensions.
+     *
+     * @param first  The first message to be added as an extension.
+     * @param second The second message to be added as an extension.
+     * @return The partially built message.
+     * @throws IllegalArgumentException If either message's type is not an extension of the base message.
+     * @see #build(Message...)
+     */
+    @Nonnull
+    public T build(@Nonnull final Message first, @Nonnull final Message second) {
+        Preconditions.checkNotNull(first, "build() got null Message");
+        Preconditions.checkNotNull(second, "build() got null Message");
+        Message.Builder packet = this.packet.newBuilderForType();
+        packet.setField(this.getField(first.getDescriptorForType()), first);
+        packet.setField(this.getField(second.getDescriptorForType()), second);
+        return this.buildPacket(packet);
+    }
+
     /**
      * Partially builds a new message, setting the specified {@link Message}s to their relative extensions.
      *
      * @param messages The messages to be added as extensions.
      * @return The partially built message.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
      */
     @Nonnull
     public T build(@Nonnull final Message... messages) {
         Preconditions.checkNotNull(messages, "build() got null Messages[]");
-        Message.Builder packet = this.builder.clone();
+        Message.Builder packet = this.packet.newBuilderForType();
         for (Message message : messages) {
-            packet.setField(descriptorMapping.get(message.getDescriptorForType()).descriptor, message);
+            packet.setField(this.getField(message.getDescriptorForType()), message);
         }
+        return this.buildPacket(packet);
+    }
+
+    /**
+     * Partially builds a packet from a builder created by the base message.
+     *
+     * @param packet The builder.
+     * @return The partially built packet.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked") // The builder was created by the base message, so it builds a T
+    private T buildPacket(@Nonnull Message.Builder packet) {
         return (T) packet.buildPartial();
     }
+
+    /**
+     * Gets the exact number of bytes written by {@link #writeTo(CodedOutputStream, Message...)} for the specified
+     * {@link Message}s, so that a buffer of the right size can be allocated before they are written. The size of each
+     * extension comes from its own memoized {@link Message#getSerializedSize()}.
+     *
+     * @param messages The messages to be written as extensions.
+     * @return The size of the serialized message.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
+     */
+    public int getSerializedSize(@Nonnull final Message... messages) {
+        Preconditions.checkNotNull(messages, "getSerializedSize() got null Messages[]");
+        int size = 0;
+        for (Message message : messages) {
+            size += CodedOutputStream.computeMessageSize(this.getField(message.getDescriptorForType()).getNumber(), message);
+        }
+        return size;
+    }
+
+    /**
+     * Serializes a message carrying the specified {@link Message}s as its extensions into an array of exactly the
+     * right size, without building the message.
+     *
+     * @param messages The messages to be written as extensions. Each type of extension should be given at most once.
+     * @return The serialized message.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
+     * @see #writeTo(CodedOutputStream, Message...)
+     */
+    @Nonnull
+    public byte[] toByteArray(@Nonnull final Message... messages) {
+        byte[] data = new byte[this.getSerializedSize(messages)];
+        CodedOutputStream output = CodedOutputStream.newInstance(data);
+        try {
+            this.writeTo(output, messages);
+        } catch (IOException e) {
+            throw new RuntimeException("Serializing to a byte array threw an IOException (should never happen).", e);
+        }
+        output.checkNoSpaceLeft();
+        return data;
+    }
+
+    /**
+     * Serializes a message carrying the specified {@link Message}s as its extensions, without building the message:
+     * each extension is written directly as a length-delimited field of the base message. The output is the same as
+     * serializing {@link #build(Message...)}, except that extensions are written in the order given rather than in
+     * field number order.
+     *
+     * @param output   The output to write the serialized message to. It is not flushed.
+     * @param messages The messages to be written as extensions. Each type of extension should be given at most once.
+     * @throws IOException              If the message could not be written.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
+     */
+    public void writeTo(@Nonnull final CodedOutputStream output, @Nonnull final Message... messages) throws IOException {
+        Preconditions.checkNotNull(output, "writeTo() got null CodedOutputStream");
+        Preconditions.checkNotNull(messages, "writeTo() got null Messages[]");
+        for (Message message : messages) {
+            output.writeMessage(this.getField(message.getDescriptorForType()).getNumber(), message);
+        }
+    }
+
+    /**
+     * Serializes a message carrying the specified {@link Message}s as its extensions, without building the message.
+     * The output is buffered in an array no larger than the serialized message, up to 4 KiB.
+     *
+     * @param output   The output to write the serialized message to. It is not flushed.
+     * @param messages The messages to be written as extensions. Each type of extension should be given at most once.
+     * @throws IOException              If the message could not be written.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
+     * @see #writeTo(CodedOutputStream, Message...)
+     */
+    public void writeTo(@Nonnull final OutputStream output, @Nonnull final Message... messages) throws IOException {
+        Preconditions.checkNotNull(output, "writeTo() got null OutputStream");
+        int size = this.getSerializedSize(messages);
+        if (size == 0) {
+            return;
+        }
+        CodedOutputStream coded = CodedOutputStream.newInstance(output, Math.min(size, MAX_OUTPUT_BUFFER_SIZE));
+        this.writeTo(coded, messages);
+        coded.flush();
+    }
+
+    /**
+     * Serializes a message carrying the specified {@link Message}s as its extensions into the remaining space of the
+     * specified buffer, without building the message. Heap buffers are written in place, and direct buffers are
+     * streamed to. The buffer's position is advanced past the serialized message.
+     *
+     * @param output   The buffer to write the serialized message to.
+     * @param messages The messages to be written as extensions. Each type of extension should be given at most once.
+     * @throws IOException              If the buffer does not have room for the message, in which case its position is
+     *                                  left unchanged.
+     * @throws IllegalArgumentException If any message's type is not an extension of the base message.
+     * @see #writeTo(CodedOutputStream, Message...)
+     */
+    public void writeTo(@Nonnull final ByteBuffer output, @Nonnull final Message... messages) throws IOException {
+        Preconditions.checkNotNull(output, "writeTo() got null ByteBuffer");
+        if (!output.hasArray()) {
+            ByteBuffer duplicate = output.duplicate();
+            this.writeTo(new ByteBufferOutputStream(duplicate), messages);
+            output.position(duplicate.position());
+            return;
+        }
+        CodedOutputStream coded = CodedOutputStream.newInstance(output.array(), output.arrayOffset() + output.position(), output.remaining());
+        this.writeTo(coded, messages);
+        output.position(output.limit() - coded.spaceLeft());
+    }
+
+    /**
+     * Gets a {@link PacketTemplate} for building messages that carry the specified type of extension, whose extension
+     * field is resolved once, here.
+     *
+     * @param type The type of extension.
+     * @param <M>  The type of extension.
+     * @return The template.
+     * @throws IllegalArgumentException If the type is not an extension of the base message.
+     */
+    @Nonnull
+    public <M extends Message> PacketTemplate<T, M> template(@Nonnull final Class<M> type) {
+        Preconditions.checkNotNull(type, "template() got null Class");
+        return new Template<M>(this.getField(DescriptorUtil.getDescriptor(type)));
+    }
+
+    /**
+     * Gets the extension field of the specified type of message.
+     *
+     * @param type The type of message.
+     * @return The extension field.
+     * @throws IllegalArgumentException If the type is not an extension of the base message.
+     */
+    @Nonnull
+    private Descriptors.FieldDescriptor getField(@Nonnull final Descriptors.Descriptor type) {
+        ExtensionRegistry.ExtensionInfo extension = this.descriptorMapping.get(type);
+        if (extension == null) {
+            throw new IllegalArgumentException(type.getFullName() + " is not a registered extension");
+        }
+        return extension.descriptor;
+    }
+
+    /**
+     * Gets whether the specified field is one of the message extensions known to this manager.
+     *
+     * @param field The field.
+     * @return Whether the field is a known extension.
+     */
+    private boolean isExtension(@Nonnull final Descriptors.FieldDescriptor field) {
+        if (!field.isExtension() || field.getJavaType() != Descriptors.FieldDescriptor.JavaType.MESSAGE) {
+            return false;
+        }
+        ExtensionRegistry.ExtensionInfo extension = this.descriptorMapping.get(field.getMessageType());
+        return extension != null && extension.descriptor == field;
+    }
+
+    /**
+     * {@link PacketTemplate} of a {@link SimplePacketManager}, which builds packets without looking up its extension
+     * field.
+     *
+     * @param <M> The type of extension.
+     */
+    private final class Template<M extends Message> implements PacketTemplate<T, M> {
+        @Nonnull
+        private final Descriptors.FieldDescriptor field;
+
+        private Template(@Nonnull Descriptors.FieldDescriptor field) {
+            this.field = field;
+        }
+
+        @Nonnull
+        @Override
+        public Descriptors.FieldDescriptor getField() {
+            return this.field;
+        }
+
+        @Nonnull
+        @Override
+        public T build(@Nonnull M message) {
+            Preconditions.checkNotNull(message, "build() got null Message");
+            return buildPacket(packet.newBuilderForType().setField(this.field, message));
+        }
+    }
+
+    /**
+     * Gets the wire format tag of the specified message field.
+     *
+     * @param field The message field.
+     * @return The field's tag.
+     */
+    private static int makeTag(@Nonnull final Descriptors.FieldDescriptor field) {
+        return (field.getNumber() << TAG_TYPE_BITS) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    }
 }
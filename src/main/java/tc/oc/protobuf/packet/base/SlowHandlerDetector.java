@@ -0,0 +1,328 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Descriptors.Descriptor;
+import tc.oc.protobuf.packet.MessageHandler;
+import tc.oc.protobuf.packet.MethodMessageHandler;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Detects handlers that take longer than a threshold to handle a message, for {@link SimpleMessageHandlerRegistry}s
+ * that it is {@link SimpleMessageHandlerRegistry#setSlowHandlerDetector(SlowHandlerDetector) set} on.
+ * <p/>
+ * Only one in every {@link #getSampleInterval() sample interval} invocations is timed, chosen at random, so that most
+ * invocations do not pay for reading the clock. Sampled invocations that exceed the threshold are {@link
+ * #report(Report) reported}, by default to a {@link Logger}.
+ * <p/>
+ * Once {@link #start(ThreadFactory) started}, a watchdog thread also takes a snapshot of the stack of sampled
+ * invocations while they are still running past the threshold, showing where the handler was spending its time. At
+ * most one snapshot is taken per handler per {@link #getSnapshotInterval() snapshot interval}, since walking the stack
+ * of another thread is expensive.
+ */
+public class SlowHandlerDetector implements Runnable, Closeable {
+    /**
+     * The default minimum time between stack snapshots of the same handler, in nanoseconds.
+     */
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private final long threshold;
+    private final int sampleInterval;
+    private final long snapshotInterval;
+    @Nullable
+    private final Logger logger;
+    /**
+     * The sampled invocations that are currently running, watched by the watchdog thread while it is running.
+     */
+    @Nonnull
+    private final Set<Sample> running = Collections.newSetFromMap(new ConcurrentHashMap<Sample, Boolean>());
+    /**
+     * The time of the last stack snapshot taken of each handler. Only accessed by the watchdog thread.
+     */
+    @Nonnull
+    private final Map<MessageHandler, Long> snapshots = new WeakHashMap<>();
+    private boolean started;
+    private volatile boolean watching;
+
+    /**
+     * Creates a new SlowHandlerDetector that takes a stack snapshot of each handler at most once per {@link
+     * #DEFAULT_SNAPSHOT_INTERVAL}.
+     *
+     * @param threshold      The time an invocation can take before it is reported.
+     * @param unit           The unit of the threshold.
+     * @param sampleInterval The average number of invocations per timed invocation; 1 times every invocation.
+     * @param logger         The {@link Logger} that slow invocations are reported to.
+     */
+    public SlowHandlerDetector(long threshold, @Nonnull TimeUnit unit, int sampleInterval, @Nullable Logger logger) {
+        this(threshold, unit, sampleInterval, DEFAULT_SNAPSHOT_INTERVAL, TimeUnit.NANOSECONDS, logger);
+    }
+
+    /**
+     * Creates a new SlowHandlerDetector.
+     *
+     * @param threshold        The time an invocation can take before it is reported.
+     * @param unit             The unit of the threshold.
+     * @param sampleInterval   The average number of invocations per timed invocation; 1 times every invocation.
+     * @param snapshotInterval The minimum time between stack snapshots of the same handler.
+     * @param snapshotUnit     The unit of the snapshot interval.
+     * @param logger           The {@link Logger} that slow invocations are reported to.
+     */
+    public SlowHandlerDetector(long threshold, @Nonnull TimeUnit unit, int sampleInterval, long snapshotInterval, @Nonnull TimeUnit snapshotUnit, @Nullable Logger logger) {
+        Preconditions.checkArgument(threshold > 0, "SlowHandlerDetector constructor got non-positive threshold %s", threshold);
+        Preconditions.checkArgument(sampleInterval > 0, "SlowHandlerDetector constructor got non-positive sample interval %s", sampleInterval);
+        Preconditions.checkArgument(snapshotInterval >= 0, "SlowHandlerDetector constructor got negative snapshot interval %s", snapshotInterval);
+        this.threshold = Preconditions.checkNotNull(unit, "SlowHandlerDetector constructor got null TimeUnit").toNanos(threshold);
+        this.sampleInterval = sampleInterval;
+        this.snapshotInterval = Preconditions.checkNotNull(snapshotUnit, "SlowHandlerDetector constructor got null TimeUnit").toNanos(snapshotInterval);
+        this.logger = logger;
+    }
+
+    /**
+     * Gets the time an invocation can take before it is reported.
+     *
+     * @return The threshold, in nanoseconds.
+     */
+    public long getThreshold() {
+        return this.threshold;
+    }
+
+    public int getSampleInterval() {
+        return this.sampleInterval;
+    }
+
+    /**
+     * Gets the minimum time between stack snapshots of the same handler.
+     *
+     * @return The snapshot interval, in nanoseconds.
+     */
+    public long getSnapshotInterval() {
+        return this.snapshotInterval;
+    }
+
+    /**
+     * Starts the watchdog thread that takes stack snapshots of slow invocations. The watchdog can only be started once.
+     *
+     * @param threadFactory The factory used to create the thread.
+     * @return The started thread.
+     * @throws IllegalStateException If the watchdog has already been started.
+     */
+    @Nonnull
+    public synchronized Thread start(@Nonnull ThreadFactory threadFactory) {
+        Preconditions.checkNotNull(threadFactory, "start() got null ThreadFactory");
+        Preconditions.checkState(!this.started, "SlowHandlerDetector has already been started");
+        Thread thread = Preconditions.checkNotNull(threadFactory.newThread(this), "start() got null Thread from ThreadFactory");
+        this.started = true;
+        this.watching = true;
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Takes stack snapshots of slow invocations until the detector is closed.
+     */
+    @Override
+    public void run() {
+        long period = Math.max(TimeUnit.MILLISECONDS.toNanos(1), this.threshold / 2);
+        try {
+            while (this.watching) {
+                TimeUnit.NANOSECONDS.sleep(period);
+                long now = System.nanoTime();
+                for (Sample sample : this.running) {
+                    if (sample.stackTrace == null && now - sample.start >= this.threshold) {
+                        Long last = this.snapshots.get(sample.handler);
+                        if (last == null || now - last >= this.snapshotInterval) {
+                            this.snapshots.put(sample.handler, now);
+                            sample.stackTrace = sample.thread.getStackTrace();
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.watching = false;
+            this.running.clear();
+        }
+    }
+
+    /**
+     * Stops the watchdog thread. Invocations are still timed and reported, without stack snapshots.
+     */
+    @Override
+    public void close() {
+        this.watching = false;
+    }
+
+    /**
+     * Starts timing an invocation of the specified handler if it is sampled.
+     *
+     * @param handler The handler being invoked.
+     * @param type    The type of message being handled.
+     * @return The sample to pass to {@link #end(Sample)} when the invocation completes, or null if it is not sampled.
+     */
+    @Nullable
+    Sample begin(@Nonnull MessageHandler handler, @Nonnull Descriptor type) {
+        if (this.sampleInterval > 1 && ThreadLocalRandom.current().nextInt(this.sampleInterval) != 0) {
+            return null;
+        }
+        Sample sample = new Sample(handler, type);
+        if (this.watching) {
+            this.running.add(sample);
+        }
+        return sample;
+    }
+
+    /**
+     * Stops timing a sampled invocation, reporting it if it exceeded the threshold.
+     *
+     * @param sample The sample returned by {@link #begin(MessageHandler, Descriptor)}.
+     */
+    void end(@Nonnull Sample sample) {
+        long nanos = System.nanoTime() - sample.start;
+        this.running.remove(sample);
+        if (nanos >= this.threshold) {
+            this.report(new Report(sample.handler, sample.type, nanos, sample.stackTrace));
+        }
+    }
+
+    /**
+     * Reports an invocation that exceeded the threshold. Called on the thread that invoked the handler, after the
+     * invocation. By default, logs the report to the {@link Logger} as a warning.
+     *
+     * @param report The slow invocation.
+     */
+    protected void report(@Nonnull Report report) {
+        if (this.logger != null && this.logger.isLoggable(Level.WARNING)) {
+            this.logger.log(Level.WARNING, report.toString());
+        }
+    }
+
+    /**
+     * A sampled invocation.
+     */
+    static final class Sample {
+        @Nonnull
+        final MessageHandler handler;
+        @Nonnull
+        final Descriptor type;
+        @Nonnull
+        final Thread thread = Thread.currentThread();
+        final long start = System.nanoTime();
+        /**
+         * The stack snapshot taken by the watchdog thread, or null if none was taken.
+         */
+        @Nullable
+        volatile StackTraceElement[] stackTrace;
+
+        private Sample(@Nonnull MessageHandler handler, @Nonnull Descriptor type) {
+            this.handler = handler;
+            this.type = type;
+        }
+    }
+
+    /**
+     * An invocation of a handler that exceeded the threshold.
+     */
+    public static final class Report {
+        @Nonnull
+        private final MessageHandler handler;
+        @Nonnull
+        private final Descriptor type;
+        private final long nanos;
+        @Nullable
+        private final StackTraceElement[] stackTrace;
+
+        private Report(@Nonnull MessageHandler handler, @Nonnull Descriptor type, long nanos, @Nullable StackTraceElement[] stackTrace) {
+            this.handler = handler;
+            this.type = type;
+            this.nanos = nanos;
+            this.stackTrace = stackTrace;
+        }
+
+        @Nonnull
+        public MessageHandler getHandler() {
+            return this.handler;
+        }
+
+        /**
+         * Gets the class of the listener that declares the handler method.
+         *
+         * @return The listener class, or the class of the handler itself if it does not invoke a {@link
+         * tc.oc.protobuf.packet.Handler} method.
+         */
+        @Nonnull
+        public Class<?> getListenerClass() {
+            Method method = this.getMethod();
+            return method != null ? method.getDeclaringClass() : this.handler.getClass();
+        }
+
+        /**
+         * Gets the {@link tc.oc.protobuf.packet.Handler} method that was invoked.
+         *
+         * @return The method, or null if the handler does not invoke a method.
+         */
+        @Nullable
+        public Method getMethod() {
+            return this.handler instanceof MethodMessageHandler ? ((MethodMessageHandler) this.handler).getMethod() : null;
+        }
+
+        /**
+         * Gets the type of message that was handled.
+         *
+         * @return The type of message.
+         */
+        @Nonnull
+        public Descriptor getType() {
+            return this.type;
+        }
+
+        /**
+         * Gets how long the invocation took.
+         *
+         * @return The time taken, in nanoseconds.
+         */
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        /**
+         * Gets the stack of the invoking thread, taken while the invocation was running past the threshold.
+         *
+         * @return The stack snapshot, or null if none was taken.
+         */
+        @Nullable
+        public StackTraceElement[] getStackTrace() {
+            return this.stackTrace == null ? null : this.stackTrace.clone();
+        }
+
+        @Override
+        public String toString() {
+            Method method = this.getMethod();
+            StringBuilder builder = new StringBuilder("Handler ").append(this.getListenerClass().getName());
+            if (method != null) {
+                builder.append('.').append(method.getName());
+            }
+            builder.append(" took ").append(TimeUnit.NANOSECONDS.toMillis(this.nanos)).append("ms to handle ").append(this.type.getFullName());
+            if (this.stackTrace != null) {
+                for (StackTraceElement element : this.stackTrace) {
+                    builder.append("\n\tat ").append(element);
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
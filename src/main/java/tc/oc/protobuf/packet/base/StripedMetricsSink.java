@@ -0,0 +1,154 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.Descriptors.Descriptor;
+import tc.oc.protobuf.packet.MetricsSink;
+import tc.oc.protobuf.packet.util.StripedCounter;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link MetricsSink} that keeps running totals per type of message in {@link StripedCounter}s, so that threads
+ * recording metrics at the same time do not contend with each other.
+ */
+public class StripedMetricsSink implements MetricsSink {
+    @Nonnull
+    private final ConcurrentMap<Descriptor, Counters> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public void parsed(@Nonnull Descriptor type) {
+        this.counters(type).parsed.increment();
+    }
+
+    @Override
+    public void unhandled(@Nonnull Descriptor type, int count) {
+        this.counters(type).unhandled.add(count);
+    }
+
+    @Override
+    public void invoked(@Nonnull Descriptor type, long nanos, boolean failed) {
+        Counters counters = this.counters(type);
+        counters.invoked.increment();
+        counters.nanos.add(nanos);
+        if (failed) {
+            counters.failed.increment();
+        }
+        long max;
+        while (nanos > (max = counters.maxNanos.get()) && !counters.maxNanos.compareAndSet(max, nanos)) {
+            // Another invocation raised the maximum first; try again against the new maximum
+        }
+    }
+
+    /**
+     * Gets the metrics recorded for the specified type of message.
+     *
+     * @param type The type of message.
+     * @return The metrics, which keep being updated, or null if none have been recorded.
+     */
+    @Nullable
+    public Counters getCounters(@Nonnull Descriptor type) {
+        return this.counters.get(Preconditions.checkNotNull(type, "getCounters() got null Descriptor"));
+    }
+
+    /**
+     * Gets the metrics recorded so far for every type of message.
+     *
+     * @return A snapshot of the types of message that have metrics. The metrics themselves keep being updated.
+     */
+    @Nonnull
+    public ImmutableMap<Descriptor, Counters> getCounters() {
+        return ImmutableMap.copyOf(this.counters);
+    }
+
+    @Nonnull
+    private Counters counters(@Nonnull Descriptor type) {
+        Counters counters = this.counters.get(type);
+        if (counters == null) {
+            Counters created = new Counters();
+            counters = this.counters.putIfAbsent(type, created);
+            if (counters == null) {
+                counters = created;
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * The metrics of a type of message.
+     */
+    public static final class Counters {
+        private final StripedCounter parsed = new StripedCounter();
+        private final StripedCounter unhandled = new StripedCounter();
+        private final StripedCounter invoked = new StripedCounter();
+        private final StripedCounter failed = new StripedCounter();
+        private final StripedCounter nanos = new StripedCounter();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Counters() {
+        }
+
+        /**
+         * Gets the number of messages parsed by packet managers.
+         *
+         * @return The number of messages.
+         */
+        public long getParsed() {
+            return this.parsed.sum();
+        }
+
+        /**
+         * Gets the number of messages that had no handlers.
+         *
+         * @return The number of messages.
+         */
+        public long getUnhandled() {
+            return this.unhandled.sum();
+        }
+
+        /**
+         * Gets the number of handler invocations.
+         *
+         * @return The number of invocations.
+         */
+        public long getInvoked() {
+            return this.invoked.sum();
+        }
+
+        /**
+         * Gets the number of handler invocations that threw an exception.
+         *
+         * @return The number of invocations.
+         */
+        public long getFailed() {
+            return this.failed.sum();
+        }
+
+        /**
+         * Gets the total time spent in handlers.
+         *
+         * @return The total time, in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return this.nanos.sum();
+        }
+
+        /**
+         * Gets the longest time spent in a single handler invocation.
+         *
+         * @return The longest time, in nanoseconds.
+         */
+        public long getMaxNanos() {
+            return this.maxNanos.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Counters{parsed=" + this.parsed + ", unhandled=" + this.unhandled + ", invoked=" + this.invoked + ", failed=" + this.failed + ", totalNanos=" + this.nanos + ", maxNanos=" + this.maxNanos + "}";
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package tc.oc.protobuf.packet.net;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Message;
+import tc.oc.protobuf.packet.MessageHandlerRegistry;
+import tc.oc.protobuf.packet.PacketManager;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A server that accepts {@link PacketConnection}s and runs each of them on a thread of its own.
+ * <p/>
+ * Threads are created with the {@link ThreadFactory} given to the server. On runtimes with virtual threads, a virtual
+ * thread factory lets a server hold a large number of mostly idle connections without tuning; otherwise, each
+ * connection uses a platform thread.
+ *
+ * @param <T> The type of packet.
+ */
+public class BlockingPacketServer<T extends Message> implements Runnable, Closeable {
+    @Nonnull
+    private final ServerSocket serverSocket;
+    @Nonnull
+    private final PacketManager<T> packetManager;
+    @Nonnull
+    private final MessageHandlerRegistry registry;
+    @Nonnull
+    private final ThreadFactory threadFactory;
+    @Nullable
+    private final Logger logger;
+    @Nonnull
+    private final Set<PacketConnection<T>> connections = Collections.newSetFromMap(new ConcurrentHashMap<PacketConnection<T>, Boolean>());
+    private volatile boolean closed;
+
+    /**
+     * Creates a new BlockingPacketServer.
+     *
+     * @param serverSocket  The bound server socket to accept connections from.
+     * @param packetManager The {@link PacketManager} used to build and parse packets.
+     * @param registry      The registry used to handle received packets.
+     * @param threadFactory The factory used to create the threads of the server and its connections.
+     * @param logger        The {@link Logger} to log errors to.
+     */
+    public BlockingPacketServer(@Nonnull ServerSocket serverSocket, @Nonnull PacketManager<T> packetManager, @Nonnull MessageHandlerRegistry registry, @Nonnull ThreadFactory threadFactory, @Nullable Logger logger) {
+        this.serverSocket = Preconditions.checkNotNull(serverSocket, "BlockingPacketServer constructor got null ServerSocket");
+        this.packetManager = Preconditions.checkNotNull(packetManager, "BlockingPacketServer constructor got null PacketManager");
+        this.registry = Preconditions.checkNotNull(registry, "BlockingPacketServer constructor got null MessageHandlerRegistry");
+        this.threadFactory = Preconditions.checkNotNull(threadFactory, "BlockingPacketServer constructor got null ThreadFactory");
+        this.logger = logger;
+    }
+
+    @Nonnull
+    public ServerSocket getServerSocket() {
+        return this.serverSocket;
+    }
+
+    /**
+     * Gets the currently open connections.
+     *
+     * @return An unmodifiable view of the open connections.
+     */
+    @Nonnull
+    public Set<PacketConnection<T>> getConnections() {
+        return Collections.unmodifiableSet(this.connections);
+    }
+
+    /**
+     * Starts a thread to accept connections.
+     *
+     * @return The started thread.
+     */
+    @Nonnull
+    public Thread start() {
+        Thread thread = this.threadFactory.newThread(this);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Accepts connections until the server is closed.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!this.closed) {
+                this.accept(this.serverSocket.accept());
+            }
+        } catch (IOException e) {
+            if (!this.closed && this.logger != null) {
+                this.logger.log(Level.SEVERE, "Failed to accept connection on " + this.serverSocket, e);
+            }
+        } finally {
+            this.close();
+        }
+    }
+
+    /**
+     * Starts a connection for the specified socket. If the connection can not be started, the socket is closed and the
+     * server keeps accepting connections.
+     *
+     * @param socket The accepted socket.
+     */
+    private void accept(@Nonnull Socket socket) {
+        final PacketConnection<T> connection;
+        try {
+            connection = new PacketConnection<>(socket, this.packetManager, this.registry, this.logger);
+        } catch (IOException | RuntimeException e) {
+            if (this.logger != null) {
+                this.logger.log(Level.WARNING, "Failed to open connection from " + socket.getRemoteSocketAddress(), e);
+            }
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already failed to open the connection
+            }
+            return;
+        }
+        this.connections.add(connection);
+        try {
+            Thread thread = this.threadFactory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        connection.run();
+                    } finally {
+                        connections.remove(connection);
+                    }
+                }
+            });
+            Preconditions.checkState(thread != null, "ThreadFactory did not create a thread");
+            thread.start();
+        } catch (RuntimeException e) {
+            if (this.logger != null) {
+                this.logger.log(Level.SEVERE, "Failed to start thread for connection from " + socket.getRemoteSocketAddress(), e);
+            }
+            this.connections.remove(connection);
+            connection.close();
+            return;
+        }
+        if (this.closed) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes every open connection.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        try {
+            this.serverSocket.close();
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log(Level.WARNING, "Failed to close " + this.serverSocket, e);
+            }
+        }
+        for (PacketConnection<T> connection : this.connections) {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package tc.oc.protobuf.packet.net;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import tc.oc.protobuf.packet.BroadcastPacket;
+import tc.oc.protobuf.packet.MessageHandlerRegistry;
+import tc.oc.protobuf.packet.PacketManager;
+import tc.oc.protobuf.packet.PacketParser;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A non-blocking connection that exchanges length-delimited packets over a {@link SocketChannel}, in the same format as
+ * {@link PacketConnection}.
+ * <p/>
+ * The connection is driven by the thread that selects on the {@link Selector} it is {@link #register(Selector, Queue)
+ * registered} with, which calls {@link #read()} when the channel is readable and {@link #flush()} when it is writable.
+ * Partial reads are accumulated in a buffer that is reused between frames, and each complete frame is parsed straight
+ * out of that buffer. Packets may be sent from any thread: they are encoded immediately and queued until the channel is
+ * writable. Only the selecting thread changes the interest set of the channel's key, since changing it from another
+ * thread races with the selecting thread and may block until the selector returns.
+ *
+ * @param <T> The type of packet.
+ */
+public class ChannelPacketConnection<T extends Message> implements Closeable {
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    /**
+     * The maximum number of queued frames written by a single gathering write.
+     */
+    private static final int MAX_GATHER = 64;
+
+    @Nonnull
+    private final SocketChannel channel;
+    @Nonnull
+    private final PacketManager<T> packetManager;
+    @Nonnull
+    private final MessageHandlerRegistry registry;
+    private final int maxFrameSize;
+    @Nullable
+    private final Logger logger;
+    /**
+     * The received bytes that have not been parsed yet, ready to be written to. Only used by the selecting thread. Grown
+     * to fit a large frame, and replaced by a buffer of the initial size once the frame has been handled.
+     */
+    @Nonnull
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    /**
+     * The encoded frames waiting to be written.
+     */
+    @Nonnull
+    private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+    @Nonnull
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    @Nullable
+    private volatile SelectionKey key;
+    /**
+     * The queue that the connection adds itself to when it needs its key to select for writes, or null until it is
+     * registered.
+     */
+    @Nullable
+    private volatile Queue<ChannelPacketConnection<?>> pendingWrites;
+    /**
+     * Whether the connection is in {@link #pendingWrites}, so that it is only added once until the selecting thread
+     * {@link #applyPendingWrite() applies} it.
+     */
+    @Nonnull
+    private final AtomicBoolean writePending = new AtomicBoolean();
+    /**
+     * Whether the channel's key is selecting for writes. Only changed by the selecting thread, and read by senders to
+     * skip waking up the selector when it is already going to flush.
+     */
+    private volatile boolean writing;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new ChannelPacketConnection with the {@link PacketParser#DEFAULT_MAX_FRAME_SIZE}.
+     *
+     * @param channel       The connected channel. It is made non-blocking.
+     * @param packetManager The {@link PacketManager} used to build and parse packets.
+     * @param registry      The registry used to handle received packets.
+     * @param logger        The {@link Logger} to log errors to.
+     * @throws IOException If the channel could not be made non-blocking.
+     */
+    public ChannelPacketConnection(@Nonnull SocketChannel channel, @Nonnull PacketManager<T> packetManager, @Nonnull MessageHandlerRegistry registry, @Nullable Logger logger) throws IOException {
+        this(channel, packetManager, registry, PacketParser.DEFAULT_MAX_FRAME_SIZE, logger);
+    }
+
+    /**
+     * Creates a new ChannelPacketConnection.
+     *
+     * @param channel       The connected channel. It is made non-blocking.
+     * @param packetManager The {@link PacketManager} used to build and parse packets.
+     * @param registry      The registry used to handle received packets.
+     * @param maxFrameSize  The maximum length of a received frame, in bytes, not including its length prefix.
+     * @param logger        The {@link Logger} to log errors to.
+     * @throws IOException If the channel could not be made non-blocking.
+     */
+    public ChannelPacketConnection(@Nonnull SocketChannel channel, @Nonnull PacketManager<T> packetManager, @Nonnull MessageHandlerRegistry registry, int maxFrameSize, @Nullable Logger logger) throws IOException {
+        this.channel = Preconditions.checkNotNull(channel, "ChannelPacketConnection constructor got null SocketChannel");
+        this.packetManager = Preconditions.checkNotNull(packetManager, "ChannelPacketConnection constructor got null PacketManager");
+        this.registry = Preconditions.checkNotNull(registry, "ChannelPacketConnection constructor got null MessageHandlerRegistry");
+        Preconditions.checkArgument(maxFrameSize > 0, "ChannelPacketConnection constructor got non-positive maximum frame size %s", maxFrameSize);
+        this.maxFrameSize = maxFrameSize;
+        this.logger = logger;
+        channel.configureBlocking(false);
+    }
+
+    @Nonnull
+    public SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * Gets whether the connection has been closed.
+     *
+     * @return Whether the connection has been closed.
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Registers the connection's channel with the specified selector for reading, attaching the connection to its key.
+     * Must be called by the selecting thread, or while the selector is not selecting.
+     * <p/>
+     * When a packet is sent while the key is not selecting for writes, the connection adds itself to the specified
+     * queue and wakes up the selector; the selecting thread must then call {@link #applyPendingWrite()} on every
+     * connection in the queue before it selects again.
+     *
+     * @param selector      The selector.
+     * @param pendingWrites The queue of connections waiting to select for writes, which must be safe to add to from
+     *                      any thread.
+     * @return The channel's key.
+     * @throws ClosedChannelException If the channel has been closed.
+     */
+    @Nonnull
+    public SelectionKey register(@Nonnull Selector selector, @Nonnull Queue<ChannelPacketConnection<?>> pendingWrites) throws ClosedChannelException {
+        Preconditions.checkState(this.key == null, "Connection is already registered");
+        this.pendingWrites = Preconditions.checkNotNull(pendingWrites, "register() got null Queue");
+        SelectionKey key = this.channel.register(Preconditions.checkNotNull(selector, "register() got null Selector"), SelectionKey.OP_READ, this);
+        this.key = key;
+        // Frames queued before the key was set did not mark the connection as pending
+        this.applyPendingWrite();
+        return key;
+    }
+
+    /**
+     * Makes the channel's key select for writes if there are frames waiting to be written. Must be called by the
+     * selecting thread for each connection that added itself to the queue it was {@link #register(Selector, Queue)
+     * registered} with, before the thread selects again.
+     */
+    public void applyPendingWrite() {
+        this.writePending.set(false);
+        SelectionKey key = this.key;
+        if (!this.writing && !this.writeQueue.isEmpty() && key != null && key.isValid()) {
+            this.writing = true;
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Reads the available bytes from the channel and handles every packet they complete. Called by the selecting thread
+     * when the channel is readable.
+     *
+     * @return The number of extensions handled, or -1 if the channel has reached the end of its input.
+     * @throws IOException If the channel could not be read, or a packet is malformed or longer than the maximum frame
+     *                     size.
+     */
+    public int read() throws IOException {
+        int numParsed = 0;
+        while (true) {
+            int count = this.channel.read(this.readBuffer);
+            if (count == -1) {
+                return -1;
+            }
+            boolean filled = !this.readBuffer.hasRemaining();
+            numParsed += this.decode();
+            if (!filled) {
+                return numParsed;
+            }
+            // The buffer was filled, so there may be more to read
+        }
+    }
+
+    /**
+     * Handles every complete frame in the read buffer, and leaves the rest ready to be read into.
+     *
+     * @return The number of extensions handled.
+     * @throws IOException If a packet is malformed or longer than the maximum frame size.
+     */
+    private int decode() throws IOException {
+        ByteBuffer buffer = this.readBuffer;
+        buffer.flip();
+        int numParsed = 0;
+        int required = 0;
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            int length = 0;
+            int shift = 0;
+            int header = 0;
+            for (int i = start; i < buffer.limit(); i++) {
+                byte b = buffer.get(i);
+                length |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    header = i - start + 1;
+                    break;
+                }
+                shift += 7;
+                if (shift >= 35) {
+                    throw new InvalidProtocolBufferException("Frame has a malformed length");
+                }
+            }
+            if (header == 0) {
+                required = buffer.remaining() + 1;
+                break;
+            }
+            if (length < 0) {
+                throw new InvalidProtocolBufferException("Frame has a malformed length prefix: negative length " + length);
+            }
+            if (length > this.maxFrameSize) {
+                throw new InvalidProtocolBufferException("Frame of " + length + " bytes exceeds the maximum of " + this.maxFrameSize);
+            }
+            if (buffer.remaining() < header + length) {
+                required = header + length;
+                break;
+            }
+            numParsed += this.packetManager.parse(buffer.array(), buffer.arrayOffset() + start + header, length, this.registry);
+            buffer.position(start + header + length);
+        }
+        buffer.compact();
+        if (required > buffer.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(required, Math.min(buffer.capacity() << 1, this.maxFrameSize)));
+            buffer.flip();
+            grown.put(buffer);
+            this.readBuffer = grown;
+        } else if (buffer.capacity() > INITIAL_BUFFER_SIZE && required <= INITIAL_BUFFER_SIZE && buffer.position() <= INITIAL_BUFFER_SIZE) {
+            // The large frame that the buffer was grown for has been handled, so don't hold on to it for the life of
+            // the connection
+            ByteBuffer shrunk = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            buffer.flip();
+            shrunk.put(buffer);
+            this.readBuffer = shrunk;
+        }
+        return numParsed;
+    }
+
+    /**
+     * Serializes a packet carrying the specified extensions into a frame of exactly the right size, and queues it to
+     * be sent once the channel is writable. May be called from any thread.
+     *
+     * @param messages The messages to be added as extensions.
+     * @throws IOException If the connection has been closed.
+     */
+    public void send(@Nonnull Message... messages) throws IOException {
+        int length = this.packetManager.getSerializedSize(messages);
+        byte[] frame = new byte[CodedOutputStream.computeRawVarint32Size(length) + length];
+        CodedOutputStream output = CodedOutputStream.newInstance(frame);
+        output.writeRawVarint32(length);
+        this.packetManager.writeTo(output, messages);
+        output.checkNoSpaceLeft();
+        this.queue(ByteBuffer.wrap(frame));
+    }
+
+    /**
+     * Queues the frame of the specified {@link BroadcastPacket} to be sent once the channel is writable, without
+     * copying it. May be called from any thread.
+     *
+     * @param packet The packet.
+     * @throws IOException If the connection has been closed.
+     */
+    public void send(@Nonnull BroadcastPacket packet) throws IOException {
+        Preconditions.checkNotNull(packet, "send() got null BroadcastPacket");
+        this.queue(packet.frame());
+    }
+
+    /**
+     * Queues an encoded frame to be sent once the channel is writable. If the key is not already selecting for writes,
+     * marks the connection as pending and wakes up the selector, whose thread then starts selecting for writes.
+     *
+     * @param frame The frame.
+     * @throws IOException If the connection has been closed.
+     */
+    private void queue(@Nonnull ByteBuffer frame) throws IOException {
+        if (this.closed) {
+            throw new ClosedChannelException();
+        }
+        this.writeQueue.add(frame);
+        if (this.closed) {
+            // The connection was closed while the frame was being queued
+            this.writeQueue.clear();
+            throw new ClosedChannelException();
+        }
+        SelectionKey key = this.key;
+        Queue<ChannelPacketConnection<?>> pendingWrites = this.pendingWrites;
+        if (!this.writing && key != null && pendingWrites != null && this.writePending.compareAndSet(false, true)) {
+            pendingWrites.add(this);
+            key.selector().wakeup();
+        }
+    }
+
+    /**
+     * Writes as many queued frames as the channel will accept. Called by the selecting thread when the channel is
+     * writable; stops selecting for writes once the queue has been drained.
+     *
+     * @throws IOException If the channel could not be written to.
+     */
+    public void flush() throws IOException {
+        while (true) {
+            int count = 0;
+            for (ByteBuffer frame : this.writeQueue) {
+                this.gather[count++] = frame;
+                if (count == MAX_GATHER) {
+                    break;
+                }
+            }
+            if (count == 0) {
+                break;
+            }
+            this.channel.write(this.gather, 0, count);
+            boolean drained = !this.gather[count - 1].hasRemaining();
+            for (int i = 0; i < count && !this.gather[i].hasRemaining(); i++) {
+                this.writeQueue.poll();
+            }
+            Arrays.fill(this.gather, 0, count, null);
+            if (!drained) {
+                // The channel's send buffer is full
+                return;
+            }
+        }
+        SelectionKey key = this.key;
+        if (key != null && key.isValid()) {
+            this.writing = false;
+            if (this.writeQueue.isEmpty()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            } else {
+                // A frame was queued after the queue was drained, by a sender that saw that we were still writing
+                this.writing = true;
+            }
+        }
+    }
+
+    /**
+     * Closes the connection, discarding any frames that have not been sent.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        SelectionKey key = this.key;
+        if (key != null) {
+            key.cancel();
+        }
+        this.writeQueue.clear();
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log(Level.WARNING, "Failed to close " + this.channel, e);
+            }
+        }
+    }
+}
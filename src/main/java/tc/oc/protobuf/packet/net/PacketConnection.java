@@ -0,0 +1,177 @@
+package tc.oc.protobuf.packet.net;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Message;
+import tc.oc.protobuf.packet.BroadcastPacket;
+import tc.oc.protobuf.packet.MessageHandlerRegistry;
+import tc.oc.protobuf.packet.PacketManager;
+import tc.oc.protobuf.packet.PacketParser;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A blocking connection that exchanges length-delimited packets over a {@link Socket}.
+ * <p/>
+ * Received packets are handled inline by the thread running the connection, so each connection needs a thread of its
+ * own. Connections are cheap to run on virtual threads where they are available, by starting them with a virtual
+ * thread factory.
+ *
+ * @param <T> The type of packet.
+ */
+public class PacketConnection<T extends Message> implements Runnable, Closeable {
+    @Nonnull
+    private final Socket socket;
+    /**
+     * The parser used to read and write packets. Its write buffer is guarded by {@link #output}.
+     */
+    @Nonnull
+    private final PacketParser<T> parser;
+    @Nonnull
+    private final MessageHandlerRegistry registry;
+    @Nullable
+    private final Logger logger;
+    /**
+     * The buffered input of the socket.
+     */
+    @Nonnull
+    private final InputStream input;
+    /**
+     * The buffered output of the socket. Guarded by itself.
+     */
+    @Nonnull
+    private final OutputStream output;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new PacketConnection.
+     *
+     * @param socket        The connected socket.
+     * @param packetManager The {@link PacketManager} used to build and parse packets.
+     * @param registry      The registry used to handle received packets.
+     * @param logger        The {@link Logger} to log errors to.
+     * @throws IOException If the socket's streams could not be opened.
+     */
+    public PacketConnection(@Nonnull Socket socket, @Nonnull PacketManager<T> packetManager, @Nonnull MessageHandlerRegistry registry, @Nullable Logger logger) throws IOException {
+        this(socket, new PacketParser<T>(Preconditions.checkNotNull(packetManager, "PacketConnection constructor got null PacketManager")), registry, logger);
+    }
+
+    /**
+     * Creates a new PacketConnection that reads and writes packets with the specified {@link PacketParser}, such as one
+     * with a different maximum frame size.
+     *
+     * @param socket   The connected socket.
+     * @param parser   The {@link PacketParser} used to read and write packets. It must not be shared with other
+     *                 connections.
+     * @param registry The registry used to handle received packets.
+     * @param logger   The {@link Logger} to log errors to.
+     * @throws IOException If the socket's streams could not be opened.
+     */
+    public PacketConnection(@Nonnull Socket socket, @Nonnull PacketParser<T> parser, @Nonnull MessageHandlerRegistry registry, @Nullable Logger logger) throws IOException {
+        this.socket = Preconditions.checkNotNull(socket, "PacketConnection constructor got null Socket");
+        this.parser = Preconditions.checkNotNull(parser, "PacketConnection constructor got null PacketParser");
+        this.registry = Preconditions.checkNotNull(registry, "PacketConnection constructor got null MessageHandlerRegistry");
+        this.logger = logger;
+        this.input = new BufferedInputStream(socket.getInputStream());
+        this.output = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    @Nonnull
+    public Socket getSocket() {
+        return this.socket;
+    }
+
+    /**
+     * Gets whether the connection has been closed.
+     *
+     * @return Whether the connection has been closed.
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Starts a thread to receive packets from the connection.
+     *
+     * @param threadFactory The factory used to create the thread.
+     * @return The started thread.
+     */
+    @Nonnull
+    public Thread start(@Nonnull ThreadFactory threadFactory) {
+        Thread thread = Preconditions.checkNotNull(threadFactory, "start() got null ThreadFactory").newThread(this);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Sends a packet carrying the specified extensions.
+     *
+     * @param messages The messages to be added as extensions.
+     * @throws IOException If the packet could not be sent.
+     */
+    public void send(@Nonnull Message... messages) throws IOException {
+        synchronized (this.output) {
+            this.parser.send(this.output, messages);
+            this.output.flush();
+        }
+    }
+
+    /**
+     * Sends the already framed {@link BroadcastPacket}, without encoding it again.
+     *
+     * @param packet The packet.
+     * @throws IOException If the packet could not be sent.
+     */
+    public void send(@Nonnull BroadcastPacket packet) throws IOException {
+        synchronized (this.output) {
+            this.parser.write(this.output, packet);
+            this.output.flush();
+        }
+    }
+
+    /**
+     * Receives and handles packets until the connection is closed.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!this.closed && this.parser.read(this.input, this.registry) >= 0) {
+                // Keep receiving until the input ends
+            }
+        } catch (IOException e) {
+            if (!this.closed && this.logger != null) {
+                this.logger.log(Level.WARNING, "Failed to read packet from " + this.socket.getRemoteSocketAddress(), e);
+            }
+        } finally {
+            this.close();
+        }
+    }
+
+    /**
+     * Closes the connection.
+     */
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log(Level.WARNING, "Failed to close " + this.socket, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package tc.oc.protobuf.packet.net;
+
+import com.google.common.base.Preconditions;
+import com.google.protobuf.Message;
+import tc.oc.protobuf.packet.MessageHandlerRegistry;
+import tc.oc.protobuf.packet.PacketManager;
+import tc.oc.protobuf.packet.PacketParser;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A server that accepts {@link ChannelPacketConnection}s and serves all of them from a single selecting thread.
+ * <p/>
+ * Received packets are handled inline by the selecting thread, so handlers should not block; a registry that invokes
+ * its handlers on an executor, such as {@link tc.oc.protobuf.packet.base.AsyncMessageHandlerRegistry}, keeps slow
+ * handlers from holding up every other connection.
+ *
+ * @param <T> The type of packet.
+ */
+public class SelectorPacketServer<T extends Message> implements Runnable, Closeable {
+    @Nonnull
+    private final ServerSocketChannel serverChannel;
+    @Nonnull
+    private final PacketManager<T> packetManager;
+    @Nonnull
+    private final MessageHandlerRegistry registry;
+    private final int maxFrameSize;
+    @Nullable
+    private final Logger logger;
+    @Nonnull
+    private final Selector selector;
+    @Nonnull
+    private final Set<ChannelPacketConnection<T>> connections = Collections.newSetFromMap(new ConcurrentHashMap<ChannelPacketConnection<T>, Boolean>());
+    /**
+     * The connections that had packets sent to them while they were not selecting for writes.
+     */
+    @Nonnull
+    private final Queue<ChannelPacketConnection<?>> pendingWrites = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    /**
+     * Creates a new SelectorPacketServer with the {@link PacketParser#DEFAULT_MAX_FRAME_SIZE}.
+     *
+     * @param serverChannel The bound server channel to accept connections from. It is made non-blocking.
+     * @param packetManager The {@link PacketManager} used to build and parse packets.
+     * @param registry      The registry used to handle received packets.
+     * @param logger        The {@link Logger} to log errors to.
+     * @throws IOException If the selector could not be opened, or the server channel could not be registered with it.
+     */
+    public SelectorPacketServer(@Nonnull ServerSocketChannel serverChannel, @Nonnull PacketManager<T> packetManager, @Nonnull MessageHandlerRegistry registry, @Nullable Logger logger) throws IOException {
+        this(serverChannel, packetManager, registry, PacketParser.DEFAULT_MAX_FRAME_SIZE, logger);
+    }
+
+    /**
+     * Creates a new SelectorPacketServer.
+     *
+     * @param serverChannel The bound server channel to accept connections from. It is made non-blocking.
+     * @param packetManager The {@link PacketManager} used to build and parse packets.
+     * @param registry      The registry used to handle received packets.
+     * @param maxFrameSize  The maximum length of a received frame, in bytes, not including its length prefix.
+     * @param logger        The {@link Logger} to log errors to.
+     * @throws IOException If the selector could not be opened, or the server channel could not be registered with it.
+     */
+    public SelectorPacketServer(@Nonnull ServerSocketChannel serverChannel, @Nonnull PacketManager<T> packetManager, @Nonnull MessageHandlerRegistry registry, int maxFrameSize, @Nullable Logger logger) throws IOException {
+        this.serverChannel = Preconditions.checkNotNull(serverChannel, "SelectorPacketServer constructor got null ServerSocketChannel");
+        this.packetManager = Preconditions.checkNotNull(packetManager, "SelectorPacketServer constructor got null PacketManager");
+        this.registry = Preconditions.checkNotNull(registry, "SelectorPacketServer constructor got null MessageHandlerRegistry");
+        Preconditions.checkArgument(maxFrameSize > 0, "SelectorPacketServer constructor got non-positive maximum frame size %s", maxFrameSize);
+        this.maxFrameSize = maxFrameSize;
+        this.logger = logger;
+        this.selector = Selector.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    @Nonnull
+    public ServerSocketChannel getServerChannel() {
+        return this.serverChannel;
+    }
+
+    /**
+     * Gets the currently open connections.
+     *
+     * @return An unmodifiable view of the open connections.
+     */
+    @Nonnull
+    public Set<ChannelPacketConnection<T>> getConnections() {
+        return Collections.unmodifiableSet(this.connections);
+    }
+
+    /**
+     * Starts the selecting thread.
+     *
+     * @param threadFactory The factory used to create the thread.
+     * @return The started thread.
+     */
+    @Nonnull
+    public Thread start(@Nonnull ThreadFactory threadFactory) {
+        Thread thread = Preconditions.checkNotNull(threadFactory, "start() got null ThreadFactory").newThread(this);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Accepts connections and serves them until the server is closed.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!this.closed) {
+                ChannelPacketConnection<?> pending;
+                while ((pending = this.pendingWrites.poll()) != null) {
+                    pending.applyPendingWrite();
+                }
+                this.selector.select();
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.attachment() == null) {
+                        this.accept();
+                    } else {
+                        this.serve(key);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!this.closed && this.logger != null) {
+                this.logger.log(Level.SEVERE, "Failed to select on " + this.serverChannel, e);
+            }
+        } finally {
+            this.close();
+        }
+    }
+
+    /**
+     * Accepts the pending connections.
+     */
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = this.serverChannel.accept();
+            } catch (IOException e) {
+                if (this.logger != null) {
+                    this.logger.log(Level.WARNING, "Failed to accept connection on " + this.serverChannel, e);
+                }
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            ChannelPacketConnection<T> connection = null;
+            try {
+                connection = new ChannelPacketConnection<>(channel, this.packetManager, this.registry, this.maxFrameSize, this.logger);
+                connection.register(this.selector, this.pendingWrites);
+                this.connections.add(connection);
+            } catch (IOException e) {
+                if (this.logger != null) {
+                    this.logger.log(Level.WARNING, "Failed to open connection from " + channel, e);
+                }
+                if (connection != null) {
+                    connection.close();
+                } else {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // Already failed to open the connection
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads from or writes to the connection of the specified key, closing it if it fails or ends. Exceptions thrown
+     * while serving a connection only close that connection, so that the selecting thread keeps serving the others.
+     *
+     * @param key The selected key of the connection.
+     */
+    @SuppressWarnings("unchecked")
+    private void serve(@Nonnull SelectionKey key) {
+        ChannelPacketConnection<T> connection = (ChannelPacketConnection<T>) key.attachment();
+        try {
+            if (key.isReadable() && connection.read() == -1) {
+                this.close(connection);
+                return;
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log(Level.WARNING, "Failed to serve connection " + connection.getChannel(), e);
+            }
+            this.close(connection);
+        } catch (RuntimeException e) {
+            // Thrown by a handler that is not a HandlerException, or while parsing; only this connection is affected
+            if (this.logger != null) {
+                this.logger.log(Level.SEVERE, "Unexpected exception while serving connection " + connection.getChannel(), e);
+            }
+            this.close(connection);
+        }
+    }
+
+    private void close(@Nonnull ChannelPacketConnection<T> connection) {
+        this.connections.remove(connection);
+        connection.close();
+    }
+
+    /**
+     * Stops accepting connections and closes every open connection.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        try {
+            this.serverChannel.close();
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log(Level.WARNING, "Failed to close " + this.serverChannel, e);
+            }
+        }
+        for (ChannelPacketConnection<T> connection : this.connections) {
+            connection.close();
+        }
+        try {
+            this.selector.close();
+        } catch (IOException e) {
+            if (this.logger != null) {
+                this.logger.log(Level.WARNING, "Failed to close " + this.selector, e);
+            }
+        }
+    }
+}
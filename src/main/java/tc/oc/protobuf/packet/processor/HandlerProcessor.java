@@ -0,0 +1,278 @@
+package tc.oc.protobuf.packet.processor;
+
+import tc.oc.protobuf.packet.Handler;
+import tc.oc.protobuf.packet.ListenerDispatcher;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor that generates a {@link ListenerDispatcher} for every {@link tc.oc.protobuf.packet.MessageListener}
+ * class declaring {@link Handler}s, so that registering instances of the class does not need reflection.
+ * <p/>
+ * A dispatcher is only generated when all of the class's {@link Handler}s can be invoked directly from generated code
+ * in the class's package; otherwise a warning is reported and the class is left to be registered by reflection.
+ * <p/>
+ * The processor is only registered as a service in the library's {@code processor} artifact, so it runs in the builds
+ * that add that artifact to their classpath, not in every build that depends on the library.
+ */
+@SupportedAnnotationTypes("tc.oc.protobuf.packet.Handler")
+public class HandlerProcessor extends AbstractProcessor {
+    private static final String LISTENER_TYPE = "tc.oc.protobuf.packet.MessageListener";
+    private static final String MESSAGE_TYPE = "com.google.protobuf.Message";
+    private static final String LIST_TYPE = "java.util.List";
+    /**
+     * The listener classes that dispatchers have already been generated (or rejected) for.
+     */
+    private final Set<String> processed = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (ExecutableElement method : ElementFilter.methodsIn(roundEnv.getElementsAnnotatedWith(Handler.class))) {
+            TypeElement listener = (TypeElement) method.getEnclosingElement();
+            if (this.processed.add(listener.getQualifiedName().toString())) {
+                this.process(listener);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generates the {@link ListenerDispatcher} for the specified listener class, if possible.
+     *
+     * @param listener The listener class.
+     */
+    private void process(TypeElement listener) {
+        if (listener.getKind() != ElementKind.CLASS || listener.getModifiers().contains(Modifier.ABSTRACT)) {
+            return;
+        }
+        TypeMirror listenerType = this.processingEnv.getTypeUtils().erasure(listener.asType());
+        if (!this.processingEnv.getTypeUtils().isAssignable(listenerType, this.getType(LISTENER_TYPE))) {
+            this.warn("Class declares handlers but is not a MessageListener", listener);
+            return;
+        }
+        if (!this.isAccessible(listener, listener)) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Class is not accessible from its package; its handlers will be registered by reflection", listener);
+            return;
+        }
+
+        List<ExecutableElement> handlers = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(this.processingEnv.getElementUtils().getAllMembers(listener))) {
+            if (method.getAnnotation(Handler.class) == null || !method.getModifiers().contains(Modifier.PUBLIC)) {
+                continue;
+            }
+            String problem = this.getProblem(listener, method);
+            if (problem != null) {
+                this.warn(problem + "; the handlers of " + listener.getQualifiedName() + " will be registered by reflection", method);
+                return;
+            }
+            handlers.add(method);
+        }
+        if (handlers.isEmpty()) {
+            return;
+        }
+
+        String packageName = this.processingEnv.getElementUtils().getPackageOf(listener).getQualifiedName().toString();
+        String binaryName = this.processingEnv.getElementUtils().getBinaryName(listener).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + ListenerDispatcher.CLASS_SUFFIX;
+        try (Writer writer = this.processingEnv.getFiler().createSourceFile(binaryName + ListenerDispatcher.CLASS_SUFFIX, listener).openWriter()) {
+            writer.write(this.generate(packageName, simpleName, listenerType.toString(), handlers));
+        } catch (IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write the ListenerDispatcher: " + e, listener);
+        }
+    }
+
+    /**
+     * Gets the reason that the specified {@link Handler} can not be invoked from a generated dispatcher.
+     *
+     * @param listener The listener class.
+     * @param method   The {@link Handler} method.
+     * @return The problem, or null if there is none.
+     */
+    private String getProblem(TypeElement listener, ExecutableElement method) {
+        if (method.getParameters().size() != 1) {
+            return "Handler must have exactly one parameter";
+        }
+        TypeMirror param = this.getMessageType(method);
+        if (param == null || param.getKind() != TypeKind.DECLARED || !this.processingEnv.getTypeUtils().isAssignable(param, this.getType(MESSAGE_TYPE))) {
+            return "Handler parameter type " + method.getParameters().get(0).asType() + " is not a Message or a List of Messages";
+        }
+        TypeElement paramElement = (TypeElement) ((DeclaredType) param).asElement();
+        if (!this.isAccessible(paramElement, listener)) {
+            return "Handler parameter type " + param + " is not accessible";
+        }
+        for (ExecutableElement getDescriptor : ElementFilter.methodsIn(paramElement.getEnclosedElements())) {
+            if (getDescriptor.getSimpleName().contentEquals("getDescriptor") && getDescriptor.getParameters().isEmpty() && getDescriptor.getModifiers().containsAll(EnumSet.of(Modifier.PUBLIC, Modifier.STATIC))) {
+                return null;
+            }
+        }
+        return "Handler parameter type " + param + " does not have the required getDescriptor() static method";
+    }
+
+    /**
+     * Gets whether the specified {@link Handler} is a batch handler, which accepts a {@link List} of messages.
+     *
+     * @param method The {@link Handler} method.
+     * @return Whether the method's parameter is a {@link List}.
+     */
+    private boolean isBatch(ExecutableElement method) {
+        TypeMirror param = this.processingEnv.getTypeUtils().erasure(method.getParameters().get(0).asType());
+        return this.processingEnv.getTypeUtils().isSameType(param, this.processingEnv.getTypeUtils().erasure(this.getType(LIST_TYPE)));
+    }
+
+    /**
+     * Gets the type of message handled by the specified {@link Handler}: the type of its parameter, or for batch
+     * handlers, the element type of its {@link List} parameter.
+     *
+     * @param method The {@link Handler} method.
+     * @return The type of message, or null if a batch handler's element type could not be determined.
+     */
+    private TypeMirror getMessageType(ExecutableElement method) {
+        TypeMirror param = method.getParameters().get(0).asType();
+        if (!this.isBatch(method)) {
+            return param;
+        }
+        List<? extends TypeMirror> arguments = ((DeclaredType) param).getTypeArguments();
+        if (arguments.size() != 1) {
+            return null;
+        }
+        TypeMirror element = arguments.get(0);
+        if (element.getKind() == TypeKind.WILDCARD) {
+            element = ((WildcardType) element).getExtendsBound();
+        }
+        return element;
+    }
+
+    /**
+     * Gets whether the specified type can be referenced from generated code in the package of the specified listener.
+     *
+     * @param type     The type to be referenced.
+     * @param listener The listener class the code is generated for.
+     * @return Whether the type is accessible.
+     */
+    private boolean isAccessible(TypeElement type, TypeElement listener) {
+        boolean samePackage = this.processingEnv.getElementUtils().getPackageOf(type).equals(this.processingEnv.getElementUtils().getPackageOf(listener));
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            Set<Modifier> modifiers = element.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || !(samePackage || modifiers.contains(Modifier.PUBLIC))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates the source of a {@link ListenerDispatcher}.
+     *
+     * @param packageName  The package of the listener class.
+     * @param simpleName   The simple name of the dispatcher class.
+     * @param listenerType The erased name of the listener class.
+     * @param handlers     The listener's {@link Handler} methods.
+     * @return The generated source.
+     */
+    private String generate(String packageName, String simpleName, String listenerType, List<ExecutableElement> handlers) {
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * Generated by ").append(HandlerProcessor.class.getName()).append(" for {@link ").append(listenerType).append("}.\n */\n");
+        source.append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+        source.append("public final class ").append(simpleName).append(" implements tc.oc.protobuf.packet.ListenerDispatcher<").append(listenerType).append("> {\n");
+        for (int i = 0; i < handlers.size(); i++) {
+            source.append("    private static final java.lang.reflect.Method METHOD_").append(i).append(";\n");
+            source.append("    private static final tc.oc.protobuf.packet.Handler ANNOTATION_").append(i).append(";\n");
+        }
+        source.append("\n");
+        source.append("    static {\n");
+        source.append("        try {\n");
+        for (int i = 0; i < handlers.size(); i++) {
+            ExecutableElement method = handlers.get(i);
+            String paramType = this.processingEnv.getTypeUtils().erasure(method.getParameters().get(0).asType()).toString();
+            source.append("            METHOD_").append(i).append(" = ").append(listenerType).append(".class.getMethod(\"").append(method.getSimpleName()).append("\", ").append(paramType).append(".class);\n");
+            source.append("            ANNOTATION_").append(i).append(" = METHOD_").append(i).append(".getAnnotation(tc.oc.protobuf.packet.Handler.class);\n");
+        }
+        source.append("        } catch (NoSuchMethodException e) {\n");
+        source.append("            throw new ExceptionInInitializerError(e);\n");
+        source.append("        }\n");
+        source.append("    }\n");
+        source.append("\n");
+        source.append("    @Override\n");
+        source.append("    public void createHandlers(final ").append(listenerType).append(" listener, com.google.common.collect.Multimap<com.google.protobuf.Descriptors.Descriptor, tc.oc.protobuf.packet.MessageHandler> handlers) {\n");
+        for (int i = 0; i < handlers.size(); i++) {
+            ExecutableElement method = handlers.get(i);
+            String paramType = this.processingEnv.getTypeUtils().erasure(method.getParameters().get(0).asType()).toString();
+            String messageType = this.processingEnv.getTypeUtils().erasure(this.getMessageType(method)).toString();
+            String target = method.getModifiers().contains(Modifier.STATIC) ? listenerType : "listener";
+            boolean batch = this.isBatch(method);
+            if (batch) {
+                source.append("        final class Handler").append(i).append(" implements tc.oc.protobuf.packet.MethodMessageHandler, tc.oc.protobuf.packet.BatchMessageHandler {\n");
+            } else {
+                source.append("        handlers.put(").append(messageType).append(".getDescriptor(), new tc.oc.protobuf.packet.MethodMessageHandler() {\n");
+            }
+            source.append("            @Override\n");
+            source.append("            public Object getParent() {\n");
+            source.append("                return ").append(target.equals("listener") ? "listener" : "null").append(";\n");
+            source.append("            }\n");
+            source.append("\n");
+            source.append("            @Override\n");
+            source.append("            public java.lang.reflect.Method getMethod() {\n");
+            source.append("                return METHOD_").append(i).append(";\n");
+            source.append("            }\n");
+            source.append("\n");
+            source.append("            @Override\n");
+            source.append("            public tc.oc.protobuf.packet.Handler getAnnotation() {\n");
+            source.append("                return ANNOTATION_").append(i).append(";\n");
+            source.append("            }\n");
+            source.append("\n");
+            source.append("            @Override\n");
+            source.append("            public void handle(com.google.protobuf.Message msg) throws tc.oc.protobuf.packet.HandlerException {\n");
+            if (batch) {
+                source.append("                this.handleAll(java.util.Collections.singletonList(msg));\n");
+                source.append("            }\n");
+                source.append("\n");
+                source.append("            @Override\n");
+                source.append("            public void handleAll(java.util.List<? extends com.google.protobuf.Message> msgs) throws tc.oc.protobuf.packet.HandlerException {\n");
+            }
+            source.append("                try {\n");
+            source.append("                    ").append(target).append(".").append(method.getSimpleName()).append(batch ? "((java.util.List) msgs);\n" : "((" + paramType + ") msg);\n");
+            source.append("                } catch (Throwable t) {\n");
+            source.append("                    throw tc.oc.protobuf.packet.HandlerException.wrap(t);\n");
+            source.append("                }\n");
+            source.append("            }\n");
+            if (batch) {
+                source.append("        }\n");
+                source.append("        handlers.put(").append(messageType).append(".getDescriptor(), new Handler").append(i).append("());\n");
+            } else {
+                source.append("        });\n");
+            }
+        }
+        source.append("    }\n");
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private TypeMirror getType(String name) {
+        return this.processingEnv.getElementUtils().getTypeElement(name).asType();
+    }
+
+    private void warn(String message, Element element) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+}
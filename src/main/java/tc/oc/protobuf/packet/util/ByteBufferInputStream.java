@@ -0,0 +1,55 @@
+package tc.oc.protobuf.packet.util;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link InputStream} that reads the remaining bytes of a {@link ByteBuffer}, advancing its position, without copying
+ * the buffer. Used to read buffers that have no accessible backing array, such as direct buffers.
+ */
+public class ByteBufferInputStream extends InputStream {
+    @Nonnull
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates a new ByteBufferInputStream.
+     *
+     * @param buffer The buffer to read from.
+     */
+    public ByteBufferInputStream(@Nonnull ByteBuffer buffer) {
+        this.buffer = Preconditions.checkNotNull(buffer, "ByteBufferInputStream constructor got null ByteBuffer");
+    }
+
+    @Override
+    public int read() {
+        return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(@Nonnull byte[] bytes, int offset, int length) {
+        Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+        if (length == 0) {
+            return 0;
+        } else if (!this.buffer.hasRemaining()) {
+            return -1;
+        }
+        int read = Math.min(length, this.buffer.remaining());
+        this.buffer.get(bytes, offset, read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+        this.buffer.position(this.buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return this.buffer.remaining();
+    }
+}
@@ -0,0 +1,53 @@
+package tc.oc.protobuf.packet.util;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link OutputStream} that writes to the remaining space of a {@link ByteBuffer}, advancing its position. Used to
+ * write to buffers that have no accessible backing array, such as direct buffers.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+    @Nonnull
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates a new ByteBufferOutputStream.
+     *
+     * @param buffer The buffer to write to.
+     */
+    public ByteBufferOutputStream(@Nonnull ByteBuffer buffer) {
+        this.buffer = Preconditions.checkNotNull(buffer, "ByteBufferOutputStream constructor got null ByteBuffer");
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IOException If the buffer is full.
+     */
+    @Override
+    public void write(int b) throws IOException {
+        if (!this.buffer.hasRemaining()) {
+            throw new IOException("ByteBuffer is full");
+        }
+        this.buffer.put((byte) b);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IOException If the buffer does not have room for the bytes, in which case none of them are written.
+     */
+    @Override
+    public void write(@Nonnull byte[] bytes, int offset, int length) throws IOException {
+        Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+        if (length > this.buffer.remaining()) {
+            throw new IOException("ByteBuffer does not have room for " + length + " more bytes");
+        }
+        this.buffer.put(bytes, offset, length);
+    }
+}
@@ -7,6 +7,10 @@ import com.google.protobuf.Message;
 import javax.annotation.Nonnull;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.List;
 
 /**
  * Utility class for {@link Descriptor}s.
@@ -16,7 +20,8 @@ public final class DescriptorUtil {
     }
 
     /**
-     * Gets the {@link Descriptor} for the specified {@link Method}'s {@link Message} parameter type.
+     * Gets the {@link Descriptor} for the specified {@link Method}'s {@link Message} parameter type, or for batch
+     * handlers, the element type of its {@link List} parameter.
      *
      * @param method The Method containing the parameter.
      * @return The {@link Descriptor} of the Method's parameter type.
@@ -39,21 +44,25 @@ public final class DescriptorUtil {
      */
     @Nonnull
     public static Descriptor getDescriptor(@Nonnull Method method) throws IllegalArgumentException {
-        Class<?>[] params = Preconditions.checkNotNull(method, "getDescriptor() got null Method").getParameterTypes();
-        if (params.length < 1) {
-            throw new IllegalArgumentException("Has too few parameters to be a handler");
-        } else if (params.length > 1) {
-            throw new IllegalArgumentException("Has too many parameters to be a handler");
-        }
-        Class<?> msgClass = params[0];
-        if (!Message.class.isAssignableFrom(msgClass)) {
-            throw new IllegalArgumentException("Parameter type " + msgClass + " is not a Message");
-        }
+        return getDescriptor(getMessageType(method));
+    }
+
+    /**
+     * Gets the {@link Descriptor} of the specified type of {@link Message}.
+     *
+     * @param msgClass The type of {@link Message}.
+     * @return The {@link Descriptor} of the type.
+     * @throws IllegalArgumentException If the type does not have an accessible getDescriptor() static method, or the
+     *                                  method did not return a {@link Descriptor}.
+     */
+    @Nonnull
+    public static Descriptor getDescriptor(@Nonnull Class<? extends Message> msgClass) throws IllegalArgumentException {
+        Preconditions.checkNotNull(msgClass, "getDescriptor() got null Class");
         Method getDescriptor;
         try {
             getDescriptor = msgClass.getMethod("getDescriptor");
         } catch (NoSuchMethodException e) {
-            throw new IllegalArgumentException("Parameter type " + msgClass + " does not have the required getDescriptor() static method", e);
+            throw new IllegalArgumentException("Type " + msgClass + " does not have the required getDescriptor() static method", e);
         } catch (SecurityException e) {
             throw new IllegalArgumentException("Failed to fetch the getDescriptor() method for " + msgClass + " due to security constraints", e);
         }
@@ -70,4 +79,56 @@ public final class DescriptorUtil {
         }
         return descriptor;
     }
+
+    /**
+     * Gets whether the specified {@link Method} is a batch {@link tc.oc.protobuf.packet.Handler}, which accepts a {@link
+     * List} of messages rather than a single message.
+     *
+     * @param method The Method.
+     * @return Whether the Method's single parameter is a {@link List}.
+     */
+    public static boolean isBatch(@Nonnull Method method) {
+        Class<?>[] params = Preconditions.checkNotNull(method, "isBatch() got null Method").getParameterTypes();
+        return params.length == 1 && params[0] == List.class;
+    }
+
+    /**
+     * Gets the type of {@link Message} handled by the specified {@link Method}: the type of its parameter, or for batch
+     * {@link tc.oc.protobuf.packet.Handler}s, the element type of its {@link List} parameter.
+     *
+     * @param method The Method.
+     * @return The type of {@link Message}.
+     * @throws IllegalArgumentException If the method does not have a single {@link Message} or {@link List} of {@link
+     *                                  Message} parameter.
+     */
+    @Nonnull
+    private static Class<? extends Message> getMessageType(@Nonnull Method method) throws IllegalArgumentException {
+        Class<?>[] params = Preconditions.checkNotNull(method, "getDescriptor() got null Method").getParameterTypes();
+        if (params.length < 1) {
+            throw new IllegalArgumentException("Has too few parameters to be a handler");
+        } else if (params.length > 1) {
+            throw new IllegalArgumentException("Has too many parameters to be a handler");
+        }
+        Class<?> msgClass = params[0];
+        if (msgClass == List.class) {
+            msgClass = null;
+            Type param = method.getGenericParameterTypes()[0];
+            if (param instanceof ParameterizedType) {
+                Type element = ((ParameterizedType) param).getActualTypeArguments()[0];
+                if (element instanceof WildcardType) {
+                    element = ((WildcardType) element).getUpperBounds()[0];
+                }
+                if (element instanceof Class) {
+                    msgClass = (Class<?>) element;
+                }
+            }
+            if (msgClass == null) {
+                throw new IllegalArgumentException("List parameter type " + param + " does not have a Message element type");
+            }
+        }
+        if (!Message.class.isAssignableFrom(msgClass)) {
+            throw new IllegalArgumentException("Parameter type " + msgClass + " is not a Message");
+        }
+        return msgClass.asSubclass(Message.class);
+    }
 }
@@ -0,0 +1,150 @@
+package tc.oc.protobuf.packet.util;
+
+import com.google.common.base.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a shared {@link Executor} so that tasks submitted with the same key run one at a time, in the order
+ * they were submitted, while tasks with different keys run in parallel.
+ * <p/>
+ * Each key with pending tasks has a queue that is drained by at most one task of the underlying executor at a time;
+ * queues are discarded as soon as they are empty, so keys do not need to be explicitly released. No lock is shared
+ * between keys.
+ *
+ * @param <K> The type of key, such as a connection. Keys are compared with {@link Object#equals(Object)}.
+ */
+public class OrderedExecutor<K> {
+    /**
+     * The value of {@link SerialQueue#pending} once a queue has been discarded.
+     */
+    private static final int RETIRED = -1;
+
+    @Nonnull
+    private final Executor executor;
+    /**
+     * The queues of the keys with pending tasks.
+     */
+    @Nonnull
+    private final ConcurrentMap<K, SerialQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new OrderedExecutor.
+     *
+     * @param executor The executor that tasks are run on. It should not reject tasks; if it does, the tasks queued
+     *                 behind the rejected task for the same key are discarded.
+     */
+    public OrderedExecutor(@Nonnull Executor executor) {
+        this.executor = Preconditions.checkNotNull(executor, "OrderedExecutor constructor got null Executor");
+    }
+
+    /**
+     * Runs the specified task after every task previously submitted with the same key has completed.
+     *
+     * @param key  The key to order the task by.
+     * @param task The task to run. Exceptions thrown by the task are passed to the running thread's {@link
+     *             Thread.UncaughtExceptionHandler}, and do not prevent later tasks from running.
+     * @throws RejectedExecutionException If the underlying executor rejected the task.
+     */
+    public void execute(@Nonnull K key, @Nonnull Runnable task) throws RejectedExecutionException {
+        Preconditions.checkNotNull(key, "execute() got null key");
+        Preconditions.checkNotNull(task, "execute() got null Runnable");
+        while (true) {
+            SerialQueue queue = this.queues.get(key);
+            if (queue == null) {
+                SerialQueue created = new SerialQueue(key);
+                queue = this.queues.putIfAbsent(key, created);
+                if (queue == null) {
+                    queue = created;
+                }
+            }
+            if (queue.offer(task)) {
+                return;
+            }
+            // The queue was discarded after we looked it up, so try again with a new one
+        }
+    }
+
+    /**
+     * Gets the number of keys that currently have pending tasks.
+     *
+     * @return The number of keys.
+     */
+    public int getPendingKeys() {
+        return this.queues.size();
+    }
+
+    /**
+     * The pending tasks of a key.
+     */
+    private final class SerialQueue implements Runnable {
+        @Nonnull
+        private final K key;
+        @Nonnull
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        /**
+         * The number of tasks that have been offered but have not completed, or {@link #RETIRED}. The queue is drained
+         * whenever this is above zero; whoever raises it from zero schedules the drain.
+         */
+        @Nonnull
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private SerialQueue(@Nonnull K key) {
+            this.key = key;
+        }
+
+        /**
+         * Adds a task to the queue.
+         *
+         * @param task The task.
+         * @return Whether the task was added, or false if the queue has been discarded.
+         */
+        private boolean offer(@Nonnull Runnable task) {
+            int pending;
+            do {
+                pending = this.pending.get();
+                if (pending == RETIRED) {
+                    return false;
+                }
+            } while (!this.pending.compareAndSet(pending, pending + 1));
+            this.tasks.add(task);
+            if (pending == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    this.pending.set(RETIRED);
+                    queues.remove(this.key, this);
+                    throw e;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            do {
+                Runnable task;
+                while ((task = this.tasks.poll()) == null) {
+                    // The task has been counted by offer() but not added yet
+                    Thread.yield();
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException | Error e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            } while (this.pending.decrementAndGet() > 0);
+            if (this.pending.compareAndSet(0, RETIRED)) {
+                queues.remove(this.key, this);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package tc.oc.protobuf.packet.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that is spread over several cells, so that threads incrementing it at the same time usually update
+ * different cache lines instead of contending on one. Reading the counter sums every cell, so it is much more expensive
+ * than updating it.
+ * <p/>
+ * This serves the same purpose as {@code java.util.concurrent.atomic.LongAdder}, which is not available on Java 7. The
+ * cell used by a thread is chosen from its id, so it does not adapt to contention, but threads with consecutive ids
+ * never share a cell.
+ */
+public final class StripedCounter {
+    /**
+     * The number of longs between two cells, so that each cell has a 64-byte cache line to itself.
+     */
+    private static final int PADDING = 8;
+    /**
+     * The number of cells, which is a power of two.
+     */
+    private static final int CELLS = cells();
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELLS * PADDING);
+
+    /**
+     * Adds the specified value to the counter.
+     *
+     * @param value The value to add.
+     */
+    public void add(long value) {
+        this.cells.getAndAdd(index(), value);
+    }
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        this.cells.getAndIncrement(index());
+    }
+
+    /**
+     * Gets the sum of every value added to the counter. Values added while the sum is being computed may or may not be
+     * included.
+     *
+     * @return The sum.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < CELLS; i++) {
+            sum += this.cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(this.sum());
+    }
+
+    private static int index() {
+        return ((int) Thread.currentThread().getId() & (CELLS - 1)) * PADDING;
+    }
+
+    private static int cells() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int cells = 1;
+        while (cells < processors * 2 && cells < 64) {
+            cells <<= 1;
+        }
+        return cells;
+    }
+}
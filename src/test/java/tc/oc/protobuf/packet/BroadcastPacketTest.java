@@ -0,0 +1,72 @@
+package tc.oc.protobuf.packet;
+
+import com.google.protobuf.ExtensionRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import tc.oc.protobuf.packet.base.SimplePacketManager;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+import tc.oc.protobuf.packet.protocols.TestGenericMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Test suite for {@link BroadcastPacket}.
+ */
+@RunWith(JUnit4.class)
+public class BroadcastPacketTest {
+    private PacketManager<TestGenericMessage.GenericMessage> packetManager;
+
+    /**
+     * Called before any tests are invoked; initializes variables needed for testing.
+     */
+    @Before
+    public void initialize() {
+        ExtensionRegistry registry = ExtensionRegistry.newInstance();
+        TestExtendingMessage.registerAllExtensions(registry);
+        this.packetManager = new SimplePacketManager<>(TestGenericMessage.GenericMessage.getDefaultInstance(), registry);
+    }
+
+    /**
+     * Test to verify that a broadcast packet's frame is the same as a length-delimited built packet, and that it can be
+     * written several times.
+     *
+     * @throws IOException If the frame could not be written.
+     */
+    @Test
+    public void frameTest() throws IOException {
+        TestExtendingMessage.ExtendingMessage message = TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(1234567).build();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        this.packetManager.build(message).writeDelimitedTo(expected);
+
+        BroadcastPacket packet = BroadcastPacket.create(this.packetManager, message);
+        Assert.assertEquals("getFrameLength() returned the wrong length", expected.size(), packet.getFrameLength());
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            packet.writeTo(output);
+            Assert.assertArrayEquals("writeTo() wrote the wrong frame", expected.toByteArray(), output.toByteArray());
+
+            ByteBuffer frame = packet.frame();
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            Assert.assertArrayEquals("frame() returned the wrong frame", expected.toByteArray(), bytes);
+        }
+    }
+
+    /**
+     * Test to verify that each view of a broadcast packet's frame is read-only and has its own position, so that the
+     * packet can be shared between writers.
+     */
+    @Test
+    public void frameViewTest() {
+        BroadcastPacket packet = BroadcastPacket.create(this.packetManager, TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(1).build());
+        ByteBuffer first = packet.frame();
+        Assert.assertTrue("frame() returned a writable view", first.isReadOnly());
+        first.position(first.limit());
+        Assert.assertEquals("frame() views share their position", packet.getFrameLength(), packet.frame().remaining());
+    }
+}
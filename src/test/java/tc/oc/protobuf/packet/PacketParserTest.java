@@ -0,0 +1,97 @@
+package tc.oc.protobuf.packet;
+
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import tc.oc.protobuf.packet.base.SimpleMessageHandlerRegistry;
+import tc.oc.protobuf.packet.base.SimplePacketManager;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+import tc.oc.protobuf.packet.protocols.TestGenericMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test suite for {@link PacketParser}.
+ */
+@RunWith(JUnit4.class)
+public class PacketParserTest implements MessageListener {
+    private PacketParser<TestGenericMessage.GenericMessage> parser;
+    private MessageHandlerRegistry handlerRegistry;
+    private final List<Integer> received = new ArrayList<>();
+
+    /**
+     * Called before any tests are invoked; initializes variables needed for testing.
+     */
+    @Before
+    public void initialize() {
+        ExtensionRegistry registry = ExtensionRegistry.newInstance();
+        TestExtendingMessage.registerAllExtensions(registry);
+        this.parser = new PacketParser<>(new SimplePacketManager<>(TestGenericMessage.GenericMessage.getDefaultInstance(), registry), 64);
+        this.handlerRegistry = new SimpleMessageHandlerRegistry();
+        this.handlerRegistry.registerAll(this);
+        this.received.clear();
+    }
+
+    /**
+     * Test to verify that packets written by {@link PacketParser#send(java.io.OutputStream, com.google.protobuf.Message...)}
+     * are read back in order by {@link PacketParser#read(java.io.InputStream, MessageHandlerRegistry)}, and that they
+     * are framed the same way as {@link com.google.protobuf.Message#writeDelimitedTo(java.io.OutputStream)}.
+     *
+     * @throws IOException If the packets could not be written or read.
+     */
+    @Test
+    public void roundTripTest() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 10; i++) {
+            TestExtendingMessage.ExtendingMessage message = TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(i * 100000).build();
+            this.parser.send(output, message);
+            TestGenericMessage.GenericMessage.newBuilder().setExtension(TestExtendingMessage.ExtendingMessage.extendingMessage, message).build().writeDelimitedTo(expected);
+        }
+        Assert.assertArrayEquals("send() did not write length-delimited packets", expected.toByteArray(), output.toByteArray());
+
+        ByteArrayInputStream input = new ByteArrayInputStream(output.toByteArray());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("read() handled the wrong number of extensions", 1, this.parser.read(input, this.handlerRegistry));
+        }
+        Assert.assertEquals("read() did not report the end of the input", -1, this.parser.read(input, this.handlerRegistry));
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("read() handled the packets out of order", i * 100000, (int) this.received.get(i));
+        }
+    }
+
+    /**
+     * Test to verify that frames longer than the maximum frame size are rejected from their length prefix alone.
+     *
+     * @throws IOException If the length prefix could not be written.
+     */
+    @Test
+    public void maxFrameSizeTest() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        output.write(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x07});
+        try {
+            this.parser.read(new ByteArrayInputStream(output.toByteArray()), this.handlerRegistry);
+            Assert.fail("read() accepted a frame longer than the maximum frame size");
+        } catch (InvalidProtocolBufferException expected) {
+            // The frame was rejected before its body was read
+        }
+    }
+
+    /**
+     * Handler for {@link TestExtendingMessage.ExtendingMessage}s.
+     *
+     * @param message The message to handle.
+     */
+    @Handler
+    public void handle(TestExtendingMessage.ExtendingMessage message) {
+        this.received.add(message.getNumericalValue());
+    }
+}
@@ -0,0 +1,120 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import tc.oc.protobuf.packet.Handler;
+import tc.oc.protobuf.packet.MessageListener;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Test suite for {@link AsyncMessageHandlerRegistry}.
+ */
+@RunWith(JUnit4.class)
+public class AsyncMessageHandlerRegistryTest implements MessageListener {
+    private final List<Runnable> submitted = new ArrayList<>();
+    private AsyncMessageHandlerRegistry handlerRegistry;
+    private int inlineHandled;
+    private int asyncHandled;
+
+    /**
+     * Called before any tests are invoked; initializes variables needed for testing.
+     */
+    @Before
+    public void initialize() {
+        this.submitted.clear();
+        this.handlerRegistry = new AsyncMessageHandlerRegistry(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        });
+        this.handlerRegistry.registerAll(this);
+        this.inlineHandled = 0;
+        this.asyncHandled = 0;
+    }
+
+    /**
+     * Test to verify that {@link AsyncMessageHandlerRegistry#handle(com.google.protobuf.Message)} only invokes inline
+     * handlers on the calling thread, and submits the rest to the executor.
+     */
+    @Test
+    public void handleTest() {
+        Assert.assertEquals("handle() dispatched the wrong number of handlers", 2, this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+        Assert.assertEquals("handle() did not invoke the inline handler", 1, this.inlineHandled);
+        Assert.assertEquals("handle() invoked the asynchronous handler inline", 0, this.asyncHandled);
+        Assert.assertEquals("handle() submitted the wrong number of handlers", 1, this.submitted.size());
+
+        this.submitted.get(0).run();
+        Assert.assertEquals("submitted task did not invoke the asynchronous handler", 1, this.asyncHandled);
+    }
+
+    /**
+     * Test to verify that the future returned by {@link AsyncMessageHandlerRegistry#handleAsync(com.google.protobuf.Message)}
+     * only completes once every handler has completed.
+     *
+     * @throws Exception If the future failed.
+     */
+    @Test
+    public void handleAsyncTest() throws Exception {
+        ListenableFuture<Integer> future = this.handlerRegistry.handleAsync(TestExtendingMessage.ExtendingMessage.getDefaultInstance());
+        Assert.assertFalse("handleAsync() completed before the asynchronous handler ran", future.isDone());
+
+        this.submitted.get(0).run();
+        Assert.assertTrue("handleAsync() did not complete after every handler ran", future.isDone());
+        Assert.assertEquals("handleAsync() counted the wrong number of handlers", 2, (int) future.get());
+    }
+
+    /**
+     * Test to verify that messages whose handlers are all inline are handled on the calling thread without submitting
+     * anything to the executor, and that {@link AsyncMessageHandlerRegistry#handleAsync(com.google.protobuf.Message)}
+     * returns an already completed future for them.
+     *
+     * @throws Exception If the future failed.
+     */
+    @Test
+    public void allInlineTest() throws Exception {
+        this.handlerRegistry.unRegisterAll(this);
+        MessageListener listener = new MessageListener() {
+            @Handler(inline = true)
+            public void handle(TestExtendingMessage.ExtendingMessage message) {
+                inlineHandled++;
+            }
+        };
+        this.handlerRegistry.registerAll(listener);
+
+        Assert.assertEquals("handle() invoked the wrong number of handlers", 1, this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+        ListenableFuture<Integer> future = this.handlerRegistry.handleAsync(TestExtendingMessage.ExtendingMessage.getDefaultInstance());
+        Assert.assertTrue("handleAsync() did not complete after invoking every handler inline", future.isDone());
+        Assert.assertEquals("handleAsync() counted the wrong number of handlers", 1, (int) future.get());
+        Assert.assertEquals("inline handler was not invoked for each message", 2, this.inlineHandled);
+        Assert.assertTrue("handlers were submitted to the executor", this.submitted.isEmpty());
+    }
+
+    /**
+     * Handler that must be invoked inline.
+     *
+     * @param message The message to handle.
+     */
+    @Handler(inline = true)
+    public void handleInline(TestExtendingMessage.ExtendingMessage message) {
+        this.inlineHandled++;
+    }
+
+    /**
+     * Handler that may be invoked asynchronously.
+     *
+     * @param message The message to handle.
+     */
+    @Handler
+    public void handleAsync(TestExtendingMessage.ExtendingMessage message) {
+        this.asyncHandled++;
+    }
+}
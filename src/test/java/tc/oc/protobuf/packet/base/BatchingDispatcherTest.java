@@ -0,0 +1,77 @@
+package tc.oc.protobuf.packet.base;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import tc.oc.protobuf.packet.Handler;
+import tc.oc.protobuf.packet.MessageListener;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test suite for {@link BatchingDispatcher}.
+ */
+@RunWith(JUnit4.class)
+public class BatchingDispatcherTest implements MessageListener {
+    private final LinkedBlockingQueue<List<TestExtendingMessage.ExtendingMessage>> batches = new LinkedBlockingQueue<>();
+
+    /**
+     * Test to verify that a batch is handled in a single call once it is full, on the dispatching thread, and that a
+     * partial batch is handled once the maximum delay has passed.
+     *
+     * @throws Exception If the test was interrupted.
+     */
+    @Test
+    public void flushTest() throws Exception {
+        SimpleMessageHandlerRegistry registry = new SimpleMessageHandlerRegistry();
+        registry.registerAll(this);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            BatchingDispatcher dispatcher = new BatchingDispatcher(registry, 3, 50, TimeUnit.MILLISECONDS, scheduler);
+            for (int i = 0; i < 3; i++) {
+                dispatcher.dispatch(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(i).build());
+            }
+            List<TestExtendingMessage.ExtendingMessage> full = this.batches.poll();
+            Assert.assertNotNull("dispatch() did not handle the full batch", full);
+            Assert.assertEquals("dispatch() handled the wrong number of messages", 3, full.size());
+            Assert.assertEquals("dispatch() handled the messages out of order", 2, full.get(2).getNumericalValue());
+
+            dispatcher.dispatch(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(3).build());
+            dispatcher.dispatch(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(4).build());
+            Assert.assertTrue("dispatch() handled a partial batch", this.batches.isEmpty());
+            List<TestExtendingMessage.ExtendingMessage> partial = this.batches.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull("partial batch was not handled after the maximum delay", partial);
+            Assert.assertEquals("scheduled flush handled the wrong number of messages", 2, partial.size());
+
+            dispatcher.dispatch(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(5).build());
+            dispatcher.close();
+            Assert.assertEquals("close() did not handle the last batch", 1, this.batches.poll().size());
+            try {
+                dispatcher.dispatch(TestExtendingMessage.ExtendingMessage.getDefaultInstance());
+                Assert.fail("dispatch() accepted a message after close()");
+            } catch (IllegalStateException expected) {
+                // The dispatcher has been closed
+            }
+            Thread.sleep(100);
+            Assert.assertTrue("a flush was handled after close()", this.batches.isEmpty());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Batch handler for {@link TestExtendingMessage.ExtendingMessage}s.
+     *
+     * @param messages The messages to handle.
+     */
+    @Handler
+    public void handleBatch(List<TestExtendingMessage.ExtendingMessage> messages) {
+        this.batches.add(messages);
+    }
+}
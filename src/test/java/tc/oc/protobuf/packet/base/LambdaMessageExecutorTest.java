@@ -0,0 +1,168 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import tc.oc.protobuf.packet.Handler;
+import tc.oc.protobuf.packet.HandlerException;
+import tc.oc.protobuf.packet.MessageHandler;
+import tc.oc.protobuf.packet.MessageListener;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+
+/**
+ * Test suite for {@link LambdaMessageExecutor}.
+ */
+@RunWith(JUnit4.class)
+public class LambdaMessageExecutorTest implements MessageListener {
+    private int handled;
+
+    /**
+     * Test to verify that {@link LambdaMessageExecutor#FACTORY} creates handlers that invoke the method and wrap its
+     * exceptions, and that registries using it dispatch to them.
+     *
+     * @throws Exception If the handler method could not be found.
+     */
+    @Test
+    public void factoryTest() throws Exception {
+        Assume.assumeTrue(LambdaMessageExecutor.isAvailable());
+        MessageHandler handler = LambdaMessageExecutor.FACTORY.create(this, LambdaMessageExecutorTest.class.getMethod("handle", TestExtendingMessage.ExtendingMessage.class));
+        Assert.assertTrue("FACTORY did not spin an invoker for a public handler", handler instanceof LambdaMessageExecutor);
+        handler.handle(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(1).build());
+        Assert.assertEquals("handle() did not invoke the method", 1, this.handled);
+        try {
+            handler.handle(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(-1).build());
+            Assert.fail("handle() did not throw the method's exception");
+        } catch (HandlerException e) {
+            Assert.assertTrue("handle() did not wrap the method's exception", e.getCause() instanceof IllegalStateException);
+        }
+
+        SimpleMessageHandlerRegistry registry = new SimpleMessageHandlerRegistry(null, LambdaMessageExecutor.FACTORY);
+        registry.registerAll(this);
+        Assert.assertEquals("handle() invoked the wrong number of handlers", 1, registry.handle(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(2).build()));
+        Assert.assertEquals("registry did not invoke the handler", 3, this.handled);
+    }
+
+    /**
+     * Test to verify that {@link LambdaMessageExecutor#FACTORY} falls back to a {@link MethodMessageExecutor} for
+     * handlers that a spun class could not call.
+     *
+     * @throws Exception If the handler method could not be found.
+     */
+    @Test
+    public void fallbackTest() throws Exception {
+        PrivateListener listener = new PrivateListener();
+        MessageHandler handler = LambdaMessageExecutor.FACTORY.create(listener, PrivateListener.class.getMethod("handle", TestExtendingMessage.ExtendingMessage.class));
+        Assert.assertTrue("FACTORY did not fall back for a handler of a private class", handler instanceof MethodMessageExecutor);
+        handler.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance());
+        Assert.assertTrue("fallback handler did not invoke the method", listener.handled);
+    }
+
+    /**
+     * Test to verify that a listener loaded by a separate class loader, which this library's lookup can not see, is
+     * invoked through a spun class when its factory is created with the listener's own lookup.
+     *
+     * @throws Exception If the listener could not be loaded.
+     */
+    @Test
+    public void pluginLookupTest() throws Exception {
+        Assume.assumeTrue(LambdaMessageExecutor.isAvailable());
+        Class<?> type = new PluginClassLoader(LambdaMessageExecutorTest.class.getClassLoader(), PluginListener.class.getName()).loadClass(PluginListener.class.getName());
+        Assert.assertNotSame("plugin class loader did not define its own listener class", PluginListener.class, type);
+        MessageListener listener = (MessageListener) type.getDeclaredConstructor().newInstance();
+        Method method = type.getMethod("handle", TestExtendingMessage.ExtendingMessage.class);
+        Assert.assertTrue("FACTORY spun an invoker for a class it can not see", LambdaMessageExecutor.FACTORY.create(listener, method) instanceof MethodMessageExecutor);
+
+        MethodHandles.Lookup lookup = (MethodHandles.Lookup) type.getMethod("lookup").invoke(null);
+        SimpleMessageHandlerRegistry registry = new SimpleMessageHandlerRegistry(null, LambdaMessageExecutor.factory(lookup));
+        Assert.assertTrue("factory() did not spin an invoker with the listener's lookup", LambdaMessageExecutor.factory(lookup).create(listener, method) instanceof LambdaMessageExecutor);
+        registry.registerAll(listener);
+        Assert.assertEquals("handle() invoked the wrong number of handlers", 1, registry.handle(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(4).build()));
+        Assert.assertEquals("registry did not invoke the plugin's handler", 4, type.getField("handled").getInt(listener));
+    }
+
+    /**
+     * Handler invoked through a spun class.
+     *
+     * @param message The message to handle.
+     */
+    @Handler
+    public void handle(TestExtendingMessage.ExtendingMessage message) {
+        if (message.getNumericalValue() < 0) {
+            throw new IllegalStateException("Negative value " + message.getNumericalValue());
+        }
+        this.handled += message.getNumericalValue();
+    }
+
+    /**
+     * Listener whose class is not accessible to spun classes.
+     */
+    private static class PrivateListener implements MessageListener {
+        private boolean handled;
+
+        @Handler
+        public void handle(TestExtendingMessage.ExtendingMessage message) {
+            this.handled = true;
+        }
+    }
+
+    /**
+     * Listener that is loaded again by a {@link PluginClassLoader}.
+     */
+    public static class PluginListener implements MessageListener {
+        public int handled;
+
+        /**
+         * Gets a lookup with private access to this class.
+         *
+         * @return The lookup.
+         */
+        public static MethodHandles.Lookup lookup() {
+            return MethodHandles.lookup();
+        }
+
+        @Handler
+        public void handle(TestExtendingMessage.ExtendingMessage message) {
+            this.handled += message.getNumericalValue();
+        }
+    }
+
+    /**
+     * Class loader that defines a class itself rather than delegating to its parent, like the class loader of a
+     * plugin.
+     */
+    private static class PluginClassLoader extends ClassLoader {
+        private final String name;
+
+        private PluginClassLoader(ClassLoader parent, String name) {
+            super(parent);
+            this.name = name;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(this.name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (this) {
+                Class<?> type = this.findLoadedClass(name);
+                if (type == null) {
+                    try (InputStream input = this.getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                        byte[] bytes = ByteStreams.toByteArray(input);
+                        type = this.defineClass(name, bytes, 0, bytes.length);
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                }
+                return type;
+            }
+        }
+    }
+}
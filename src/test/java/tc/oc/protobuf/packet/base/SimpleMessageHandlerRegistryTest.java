@@ -0,0 +1,438 @@
+package tc.oc.protobuf.packet.base;
+
+import com.google.protobuf.Message;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import tc.oc.protobuf.packet.*;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+import tc.oc.protobuf.packet.protocols.TestGenericMessage;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test suite for {@link SimpleMessageHandlerRegistry}.
+ */
+@RunWith(JUnit4.class)
+public class SimpleMessageHandlerRegistryTest implements MessageListener {
+    private SimpleMessageHandlerRegistry handlerRegistry;
+    private int extendingHandled;
+    private int genericHandled;
+
+    /**
+     * Called before any tests are invoked; initializes variables needed for testing.
+     */
+    @Before
+    public void initialize() {
+        this.handlerRegistry = new SimpleMessageHandlerRegistry();
+        this.extendingHandled = 0;
+        this.genericHandled = 0;
+    }
+
+    /**
+     * Test to verify that {@link SimpleMessageHandlerRegistry#handle(com.google.protobuf.Message)} only invokes the
+     * handlers registered for the message's own type.
+     */
+    @Test
+    public void handleDispatchesByTypeTest() {
+        this.handlerRegistry.registerAll(this);
+        Assert.assertEquals("handle() invoked the wrong number of handlers", 1, this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+        Assert.assertEquals("handle() did not invoke the ExtendingMessage handler", 1, this.extendingHandled);
+        Assert.assertEquals("handle() invoked the GenericMessage handler", 0, this.genericHandled);
+    }
+
+    /**
+     * Test to verify that handlers stop being invoked once they are un-registered.
+     */
+    @Test
+    public void unRegisterTest() {
+        MessageHandler handler = new MessageHandler() {
+            @Override
+            public void handle(Message msg) throws HandlerException {
+                genericHandled++;
+            }
+        };
+        this.handlerRegistry.register(TestGenericMessage.GenericMessage.getDescriptor(), handler);
+        this.handlerRegistry.registerAll(this);
+        Assert.assertEquals("handle() invoked the wrong number of handlers", 2, this.handlerRegistry.handle(TestGenericMessage.GenericMessage.getDefaultInstance()));
+
+        this.handlerRegistry.unRegister(TestGenericMessage.GenericMessage.getDescriptor(), handler);
+        Assert.assertEquals("handle() invoked an un-registered handler", 1, this.handlerRegistry.handle(TestGenericMessage.GenericMessage.getDefaultInstance()));
+
+        this.handlerRegistry.unRegisterAll(this);
+        Assert.assertEquals("handle() invoked an un-registered listener", 0, this.handlerRegistry.handle(TestGenericMessage.GenericMessage.getDefaultInstance()));
+        Assert.assertEquals("handle() invoked an un-registered listener", 0, this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+    }
+
+    /**
+     * Test to verify that {@link SimpleMessageHandlerRegistry#handle(com.google.protobuf.Message)} can be called while
+     * another thread is registering and un-registering handlers.
+     *
+     * @throws Exception If the registering thread failed.
+     */
+    @Test
+    public void concurrentRegisterTest() throws Exception {
+        final MessageListener listener = new SimpleMessageHandlerRegistryTest();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread registering = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        handlerRegistry.registerAll(listener);
+                        handlerRegistry.unRegisterAll(listener);
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        this.handlerRegistry.registerAll(this);
+        registering.start();
+        while (registering.isAlive()) {
+            Assert.assertTrue("handle() did not invoke the registered handler", this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()) >= 1);
+        }
+        registering.join();
+        Assert.assertNull("registering thread failed", failure.get());
+        Assert.assertEquals("handle() invoked an un-registered listener", 1, this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+    }
+
+    /**
+     * Test to verify that handlers declared on non-public listener classes can be invoked.
+     */
+    @Test
+    public void nonPublicListenerTest() {
+        PrivateListener listener = new PrivateListener();
+        this.handlerRegistry.registerAll(listener);
+        Assert.assertEquals("handle() invoked the wrong number of handlers", 1, this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+        Assert.assertTrue("handle() did not invoke the private listener's handler", listener.handled);
+    }
+
+    /**
+     * Test to verify that {@link SimpleMessageHandlerRegistry#registerAll(MessageListener)} creates its handlers with
+     * the registry's {@link MessageHandlerFactory}, and that they can be un-registered by listener.
+     */
+    @Test
+    public void handlerFactoryTest() {
+        final List<Method> created = new ArrayList<>();
+        this.handlerRegistry = new SimpleMessageHandlerRegistry(null, new MessageHandlerFactory() {
+            @Override
+            public MessageHandler create(MessageListener listener, Method method) {
+                created.add(method);
+                return MethodMessageExecutor.FACTORY.create(listener, method);
+            }
+        });
+        this.handlerRegistry.registerAll(this);
+        Assert.assertEquals("registerAll() did not use the MessageHandlerFactory", 2, created.size());
+        Assert.assertEquals("handle() invoked the wrong number of handlers", 1, this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+
+        Assert.assertTrue("unRegisterAll() did not find the listener", this.handlerRegistry.unRegisterAll(this));
+        Assert.assertEquals("handle() invoked an un-registered listener", 0, this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+    }
+
+    /**
+     * Test to verify that each registered instance of a listener class is bound to its own handlers.
+     */
+    @Test
+    public void registerInstancesTest() {
+        List<PrivateListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            PrivateListener listener = new PrivateListener();
+            this.handlerRegistry.registerAll(listener);
+            listeners.add(listener);
+        }
+        Assert.assertEquals("handle() invoked the wrong number of handlers", 100, this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+        for (PrivateListener listener : listeners) {
+            Assert.assertTrue("handle() did not invoke every listener", listener.handled);
+        }
+
+        this.handlerRegistry.unRegisterAll(listeners.get(0));
+        Assert.assertEquals("handle() invoked an un-registered listener", 99, this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+    }
+
+    /**
+     * Test to verify that {@link SimpleMessageHandlerRegistry#handleAll(List)} passes each group of messages to batch
+     * handlers in a single call, and each message to other handlers, whether the handlers were created by the generated
+     * dispatcher or by the {@link MessageHandlerFactory}.
+     */
+    @Test
+    public void handleAllTest() {
+        List<Message> messages = new ArrayList<>();
+        messages.add(TestExtendingMessage.ExtendingMessage.getDefaultInstance());
+        messages.add(TestGenericMessage.GenericMessage.getDefaultInstance());
+        messages.add(TestExtendingMessage.ExtendingMessage.getDefaultInstance());
+
+        for (SimpleMessageHandlerRegistry registry : new SimpleMessageHandlerRegistry[]{new SimpleMessageHandlerRegistry(), new SimpleMessageHandlerRegistry(null, new MessageHandlerFactory() {
+            @Override
+            public MessageHandler create(MessageListener listener, Method method) {
+                return MethodMessageExecutor.FACTORY.create(listener, method);
+            }
+        })}) {
+            BatchListener listener = new BatchListener();
+            registry.registerAll(listener);
+            Assert.assertEquals("handleAll() invoked the wrong number of handlers", 2, registry.handleAll(messages));
+            Assert.assertEquals("handleAll() did not pass the ExtendingMessages in one batch", 1, listener.batches.size());
+            Assert.assertEquals("handleAll() passed the wrong batch", 2, listener.batches.get(0).size());
+            Assert.assertEquals("handleAll() did not invoke the GenericMessage handler once per message", 1, listener.genericHandled);
+
+            Assert.assertEquals("handle() invoked the wrong number of handlers", 1, registry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+            Assert.assertEquals("handle() did not pass a batch of one message", 1, listener.batches.get(1).size());
+        }
+    }
+
+    /**
+     * Test to verify that {@link SlowHandlerDetector} reports only the handlers that exceed its threshold, along with
+     * their method and a stack snapshot taken while they were running.
+     */
+    @Test
+    public void slowHandlerTest() {
+        final List<SlowHandlerDetector.Report> reports = new ArrayList<>();
+        SlowHandlerDetector detector = new SlowHandlerDetector(20, TimeUnit.MILLISECONDS, 1, null) {
+            @Override
+            protected void report(SlowHandlerDetector.Report report) {
+                reports.add(report);
+            }
+        };
+        detector.start(Executors.defaultThreadFactory());
+        try {
+            this.handlerRegistry.setSlowHandlerDetector(detector);
+            this.handlerRegistry.registerAll(new SlowListener());
+            this.handlerRegistry.handle(TestGenericMessage.GenericMessage.getDefaultInstance());
+            this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance());
+        } finally {
+            detector.close();
+        }
+
+        Assert.assertEquals("SlowHandlerDetector reported the wrong number of handlers", 1, reports.size());
+        SlowHandlerDetector.Report report = reports.get(0);
+        Assert.assertEquals("SlowHandlerDetector reported the wrong listener", SlowListener.class, report.getListenerClass());
+        Assert.assertEquals("SlowHandlerDetector reported the wrong method", "handleSlow", report.getMethod().getName());
+        Assert.assertEquals("SlowHandlerDetector reported the wrong type", TestExtendingMessage.ExtendingMessage.getDescriptor(), report.getType());
+        Assert.assertTrue("SlowHandlerDetector reported a time below its threshold", report.getNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        Assert.assertNotNull("SlowHandlerDetector did not take a stack snapshot", report.getStackTrace());
+        boolean found = false;
+        for (StackTraceElement element : report.getStackTrace()) {
+            found |= element.getMethodName().equals("handleSlow");
+        }
+        Assert.assertTrue("SlowHandlerDetector's stack snapshot does not include the handler", found);
+    }
+
+    /**
+     * Test to verify that handler exceptions are passed to the {@link HandlerErrorReporter} without a stack trace of
+     * their own, that the default reporter logs every exception on the handling thread, and that a started {@link
+     * LoggingErrorReporter} logs each failing handler once per interval on its own thread.
+     *
+     * @throws InterruptedException If the test was interrupted while waiting for the reporter to finish logging.
+     */
+    @Test
+    public void errorReporterTest() throws InterruptedException {
+        final List<HandlerException> exceptions = new ArrayList<>();
+        this.handlerRegistry.setErrorReporter(new HandlerErrorReporter() {
+            @Override
+            public void handlerFailed(MessageHandler handler, List<? extends Message> messages, HandlerException exception) {
+                exceptions.add(exception);
+            }
+        });
+        this.handlerRegistry.registerAll(new FailingListener());
+        Assert.assertEquals("handle() counted a failed handler", 0, this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance()));
+        Assert.assertEquals("handle() did not report the exception", 1, exceptions.size());
+        Assert.assertTrue("handle() reported the wrong cause", exceptions.get(0).getCause() instanceof IllegalStateException);
+        Assert.assertEquals("HandlerException filled in its own stack trace", 0, exceptions.get(0).getStackTrace().length);
+
+        final List<LogRecord> records = new ArrayList<>();
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new java.util.logging.Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        SimpleMessageHandlerRegistry loggingRegistry = new SimpleMessageHandlerRegistry(logger);
+        loggingRegistry.registerAll(new FailingListener());
+        for (int i = 0; i < 3; i++) {
+            loggingRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance());
+        }
+        Assert.assertEquals("default reporter did not log every exception on the handling thread", 3, records.size());
+        records.clear();
+
+        LoggingErrorReporter reporter = new LoggingErrorReporter(logger, 1, TimeUnit.HOURS, 16);
+        Thread thread = reporter.start(Executors.defaultThreadFactory());
+        this.handlerRegistry.setErrorReporter(reporter);
+        for (int i = 0; i < 100; i++) {
+            this.handlerRegistry.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance());
+        }
+        reporter.close();
+        thread.join(5000);
+        Assert.assertEquals("LoggingErrorReporter did not log the handler exactly once", 1, records.size());
+        Assert.assertTrue("LoggingErrorReporter did not name the handler", records.get(0).getMessage().contains(FailingListener.class.getName() + ".handleFailing"));
+        Assert.assertTrue("LoggingErrorReporter did not log the exception", records.get(0).getThrown() instanceof HandlerException);
+    }
+
+    /**
+     * Test to verify that handlers are invoked in order of {@link Handler#priority()}, and that cancelling the {@link
+     * Dispatch} only skips the later handlers that {@link Handler#ignoreCancelled() ignore cancelled} messages for that
+     * message, whether the registry uses the default {@link MessageHandlerFactory} or another one.
+     */
+    @Test
+    public void priorityTest() {
+        for (SimpleMessageHandlerRegistry registry : new SimpleMessageHandlerRegistry[]{new SimpleMessageHandlerRegistry(), new SimpleMessageHandlerRegistry(null, new MessageHandlerFactory() {
+            @Override
+            public MessageHandler create(MessageListener listener, Method method) {
+                return MethodMessageExecutor.FACTORY.create(listener, method);
+            }
+        })}) {
+            PriorityListener listener = new PriorityListener();
+            registry.registerAll(listener);
+            Assert.assertEquals("handle() invoked the wrong number of handlers", 4, registry.handle(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(1).build()));
+            Assert.assertEquals("handle() invoked the handlers out of order", Arrays.asList("lowest", "normal", "high", "monitor"), listener.invoked);
+            Assert.assertFalse("Dispatch was cancelled", listener.cancelled);
+
+            listener.invoked.clear();
+            Assert.assertEquals("handle() invoked the wrong number of handlers", 3, registry.handle(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(-1).build()));
+            Assert.assertEquals("handle() did not skip the handler ignoring cancelled messages", Arrays.asList("lowest", "normal", "monitor"), listener.invoked);
+            Assert.assertTrue("Dispatch was not cancelled", listener.cancelled);
+
+            listener.invoked.clear();
+            List<Message> messages = new ArrayList<>();
+            messages.add(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(1).build());
+            messages.add(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(-1).build());
+            messages.add(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(2).build());
+            Assert.assertEquals("handleAll() invoked the wrong number of handlers", 11, registry.handleAll(messages));
+            Assert.assertEquals("handleAll() did not cancel each message separately", Arrays.asList("lowest", "lowest", "lowest", "normal", "normal", "normal", "high", "high", "monitor", "monitor", "monitor"), listener.invoked);
+            Assert.assertFalse("Cancelling a message cancelled the messages after it", listener.cancelled);
+        }
+        try {
+            Dispatch.current();
+            Assert.fail("Dispatch.current() returned a dispatch outside of handle()");
+        } catch (IllegalStateException expected) {
+            // Every dispatch ended with its call to handle()
+        }
+    }
+
+    /**
+     * Handler for {@link TestExtendingMessage.ExtendingMessage}s.
+     *
+     * @param message The message to handle.
+     */
+    @Handler
+    public void handleExtending(TestExtendingMessage.ExtendingMessage message) {
+        this.extendingHandled++;
+    }
+
+    /**
+     * Handler for {@link TestGenericMessage.GenericMessage}s.
+     *
+     * @param message The message to handle.
+     */
+    @Handler
+    public void handleGeneric(TestGenericMessage.GenericMessage message) {
+        this.genericHandled++;
+    }
+
+    /**
+     * Listener with a batch handler.
+     */
+    public static class BatchListener implements MessageListener {
+        private final List<List<TestExtendingMessage.ExtendingMessage>> batches = new ArrayList<>();
+        private int genericHandled;
+
+        @Handler
+        public void handleBatch(List<TestExtendingMessage.ExtendingMessage> messages) {
+            this.batches.add(messages);
+        }
+
+        @Handler
+        public void handleGeneric(TestGenericMessage.GenericMessage message) {
+            this.genericHandled++;
+        }
+    }
+
+    /**
+     * Listener with a handler that takes longer than the threshold of {@link #slowHandlerTest()}.
+     */
+    public static class SlowListener implements MessageListener {
+        @Handler
+        public void handleSlow(TestExtendingMessage.ExtendingMessage message) throws HandlerException {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                throw new HandlerException(e);
+            }
+        }
+
+        @Handler
+        public void handleFast(TestGenericMessage.GenericMessage message) {
+        }
+    }
+
+    /**
+     * Listener with a handler that always fails.
+     */
+    public static class FailingListener implements MessageListener {
+        @Handler
+        public void handleFailing(TestExtendingMessage.ExtendingMessage message) {
+            throw new IllegalStateException("Failing handler");
+        }
+    }
+
+    /**
+     * Listener with handlers of every priority, which cancels the dispatch of messages with a negative value.
+     */
+    public static class PriorityListener implements MessageListener {
+        private final List<String> invoked = new ArrayList<>();
+        private boolean cancelled;
+
+        @Handler(priority = HandlerPriority.MONITOR)
+        public void handleMonitor(TestExtendingMessage.ExtendingMessage message) {
+            this.invoked.add("monitor");
+            this.cancelled = Dispatch.current().isCancelled();
+        }
+
+        @Handler(priority = HandlerPriority.HIGH, ignoreCancelled = true)
+        public void handleHigh(TestExtendingMessage.ExtendingMessage message) {
+            this.invoked.add("high");
+        }
+
+        @Handler
+        public void handleNormal(TestExtendingMessage.ExtendingMessage message) {
+            this.invoked.add("normal");
+        }
+
+        @Handler(priority = HandlerPriority.LOWEST)
+        public void handleLowest(TestExtendingMessage.ExtendingMessage message) {
+            this.invoked.add("lowest");
+            Dispatch.current().setCancelled(message.getNumericalValue() < 0);
+        }
+    }
+
+    /**
+     * Listener whose class is not accessible outside of this test.
+     */
+    private static class PrivateListener implements MessageListener {
+        private boolean handled;
+
+        @Handler
+        public void handle(TestExtendingMessage.ExtendingMessage message) {
+            this.handled = true;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package tc.oc.protobuf.packet.base;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.Descriptors;
 import com.google.protobuf.ExtensionRegistry;
 import com.google.protobuf.Message;
 import org.junit.Assert;
@@ -11,7 +14,13 @@ import tc.oc.protobuf.packet.*;
 import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
 import tc.oc.protobuf.packet.protocols.TestGenericMessage;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Test suite for {@link SimplePacketManager}.
@@ -23,6 +32,7 @@ public class SimplePacketManagerTest implements MessageListener {
     private int extendedInt;
     private int parsedInt;
     private boolean handlerHasRun;
+    private final List<Integer> parsedInts = new ArrayList<>();
 
     /**
      * Called before any tests are invoked; initializes variables needed for testing.
@@ -74,15 +84,268 @@ public class SimplePacketManagerTest implements MessageListener {
         Assert.assertEquals("build() did not return an equivalent message", extendedInt, parsedInt);
     }
 
+    /**
+     * Test to verify that packets built by a {@link PacketTemplate} match packets built by {@link
+     * SimplePacketManager#build(com.google.protobuf.Message)}, and that unknown extension types are rejected.
+     */
+    @Test
+    public void templateTest() {
+        PacketTemplate<TestGenericMessage.GenericMessage, TestExtendingMessage.ExtendingMessage> template = this.packetManager.template(TestExtendingMessage.ExtendingMessage.class);
+        Assert.assertEquals("template() resolved the wrong extension", TestExtendingMessage.ExtendingMessage.extendingMessage.getDescriptor(), template.getField());
+        TestExtendingMessage.ExtendingMessage message = TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(new Random().nextInt(15)).build();
+        Assert.assertEquals("template did not build an equivalent message", this.packetManager.build(message), template.build(message));
+
+        try {
+            this.packetManager.template(TestGenericMessage.GenericMessage.class);
+            Assert.fail("template() accepted a type that is not an extension");
+        } catch (IllegalArgumentException expected) {
+            // GenericMessage does not extend itself
+        }
+        try {
+            this.packetManager.build(TestGenericMessage.GenericMessage.getDefaultInstance());
+            Assert.fail("build() accepted a type that is not an extension");
+        } catch (IllegalArgumentException expected) {
+            // GenericMessage does not extend itself
+        }
+    }
+
+    /**
+     * Test to verify that {@link SimplePacketManager#writeTo(java.io.OutputStream, com.google.protobuf.Message...)},
+     * {@link SimplePacketManager#writeTo(java.nio.ByteBuffer, com.google.protobuf.Message...)} and {@link
+     * SimplePacketManager#toByteArray(com.google.protobuf.Message...)} write the same bytes as serializing a built
+     * message, and that {@link SimplePacketManager#getSerializedSize(com.google.protobuf.Message...)} is exact.
+     *
+     * @throws IOException If the message could not be written.
+     */
+    @Test
+    public void writeToTest() throws IOException {
+        TestExtendingMessage.ExtendingMessage message = TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(new Random().nextInt(15)).build();
+        byte[] expected = this.packetManager.build(message).toByteArray();
+        Assert.assertEquals("getSerializedSize() computed the wrong size", expected.length, this.packetManager.getSerializedSize(message));
+        Assert.assertArrayEquals("toByteArray() wrote the wrong bytes", expected, this.packetManager.toByteArray(message));
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        this.packetManager.writeTo(stream, message);
+        Assert.assertArrayEquals("writeTo() wrote the wrong bytes to an OutputStream", expected, stream.toByteArray());
+
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(64), ByteBuffer.allocateDirect(64)}) {
+            buffer.position(3);
+            this.packetManager.writeTo(buffer, message);
+            Assert.assertEquals("writeTo() did not advance the ByteBuffer", 3 + expected.length, buffer.position());
+            byte[] written = new byte[expected.length];
+            buffer.position(3);
+            buffer.get(written);
+            Assert.assertArrayEquals("writeTo() wrote the wrong bytes to a ByteBuffer", expected, written);
+
+            buffer.limit(buffer.position() + expected.length - 1);
+            try {
+                this.packetManager.writeTo(buffer, message);
+                Assert.fail("writeTo() overflowed a ByteBuffer");
+            } catch (IOException e) {
+                Assert.assertEquals("writeTo() moved the position of a full ByteBuffer", 3 + expected.length, buffer.position());
+            }
+        }
+    }
+
+    /**
+     * Test to verify that {@link SimplePacketManager#build(com.google.protobuf.Message...)} can be called by several
+     * threads at once, and that reusing builders does not leak extensions between packets.
+     *
+     * @throws Exception If a building thread failed.
+     */
+    @Test
+    public void concurrentBuildTest() throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t * 100000;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10000; i++) {
+                            TestGenericMessage.GenericMessage packet = packetManager.build(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(offset + i).build());
+                            Assert.assertEquals("build() returned a packet with the wrong extension", offset + i, packet.getExtension(TestExtendingMessage.ExtendingMessage.extendingMessage).getNumericalValue());
+                            Assert.assertEquals("build() reused an earlier packet's fields", 1, packet.getAllFields().size());
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull("building thread failed", failure.get());
+
+        TestGenericMessage.GenericMessage first = this.packetManager.build(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(1).build());
+        this.packetManager.build(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(2).build());
+        Assert.assertEquals("build() modified an earlier packet", 1, first.getExtension(TestExtendingMessage.ExtendingMessage.extendingMessage).getNumericalValue());
+    }
+
+    /**
+     * Test to verify that {@link SimplePacketManager#parse(com.google.protobuf.CodedInputStream,
+     * tc.oc.protobuf.packet.MessageHandlerRegistry)} is properly parsing serialized extended messages.
+     *
+     * @throws IOException If the serialized message could not be parsed.
+     */
+    @Test
+    public void serializedParseTest() throws IOException {
+        this.extendedInt = new Random().nextInt(15);
+        this.parsedInt = -1;
+        this.handlerRegistry = new SimpleMessageHandlerRegistry();
+        handlerRegistry.registerAll(this);
+        byte[] serialized = TestGenericMessage.GenericMessage.newBuilder().addStringValue("skipped").setExtension(TestExtendingMessage.ExtendingMessage.extendingMessage, TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(extendedInt).build()).build().toByteArray();
+        int handled = this.packetManager.parse(CodedInputStream.newInstance(serialized), this.handlerRegistry);
+        Assert.assertEquals("parse() handled the wrong number of extensions", 1, handled);
+        Assert.assertEquals("handle() incorrectly parsed ExtendingMessage (or got corrupt ExtendingMessage)", extendedInt, parsedInt);
+    }
+
+    /**
+     * Test to verify that {@link SimplePacketManager#parse(byte[], int, int, tc.oc.protobuf.packet.MessageHandlerRegistry)}
+     * and {@link SimplePacketManager#parse(java.nio.ByteBuffer, tc.oc.protobuf.packet.MessageHandlerRegistry)} are
+     * properly parsing serialized extended messages from arrays and buffers.
+     *
+     * @throws IOException If the serialized message could not be parsed.
+     */
+    @Test
+    public void serializedInputsParseTest() throws IOException {
+        this.extendedInt = new Random().nextInt(15);
+        this.handlerRegistry = new SimpleMessageHandlerRegistry();
+        handlerRegistry.registerAll(this);
+        byte[] serialized = TestGenericMessage.GenericMessage.newBuilder().setExtension(TestExtendingMessage.ExtendingMessage.extendingMessage, TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(extendedInt).build()).build().toByteArray();
+
+        byte[] padded = new byte[serialized.length + 4];
+        System.arraycopy(serialized, 0, padded, 2, serialized.length);
+        this.parsedInt = -1;
+        Assert.assertEquals("parse() handled the wrong number of extensions", 1, this.packetManager.parse(padded, 2, serialized.length, this.handlerRegistry));
+        Assert.assertEquals("parse() incorrectly parsed a byte[]", extendedInt, parsedInt);
+
+        ByteBuffer heap = ByteBuffer.wrap(padded, 2, serialized.length);
+        this.parsedInt = -1;
+        Assert.assertEquals("parse() handled the wrong number of extensions", 1, this.packetManager.parse(heap, this.handlerRegistry));
+        Assert.assertEquals("parse() incorrectly parsed a heap ByteBuffer", extendedInt, parsedInt);
+        Assert.assertFalse("parse() did not consume the heap ByteBuffer", heap.hasRemaining());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(serialized.length);
+        direct.put(serialized).flip();
+        this.parsedInt = -1;
+        Assert.assertEquals("parse() handled the wrong number of extensions", 1, this.packetManager.parse(direct, this.handlerRegistry));
+        Assert.assertEquals("parse() incorrectly parsed a direct ByteBuffer", extendedInt, parsedInt);
+        Assert.assertFalse("parse() did not consume the direct ByteBuffer", direct.hasRemaining());
+    }
+
+    /**
+     * Test to verify that {@link SimplePacketManager#parse(com.google.protobuf.CodedInputStream,
+     * tc.oc.protobuf.packet.MessageHandlerRegistry)} does not decode extensions that have no handlers.
+     *
+     * @throws IOException If the serialized message could not be parsed.
+     */
+    @Test
+    public void serializedParseSkipsUnhandledTest() throws IOException {
+        // Field 16 (extending_message) with a malformed payload
+        byte[] serialized = {(byte) 0x82, 0x01, 0x02, (byte) 0xFF, (byte) 0xFF};
+        int handled = this.packetManager.parse(CodedInputStream.newInstance(serialized), new SimpleMessageHandlerRegistry());
+        Assert.assertEquals("parse() handled an extension without handlers", 0, handled);
+    }
+
+    /**
+     * Test to verify that {@link SimplePacketManager} and {@link SimpleMessageHandlerRegistry} report parsed,
+     * unhandled, invoked and failed messages to their {@link MetricsSink}s.
+     *
+     * @throws IOException If the serialized message could not be parsed.
+     */
+    @Test
+    public void metricsTest() throws IOException {
+        StripedMetricsSink metrics = new StripedMetricsSink();
+        SimplePacketManager<TestGenericMessage.GenericMessage> packetManager = (SimplePacketManager<TestGenericMessage.GenericMessage>) this.packetManager;
+        packetManager.setMetricsSink(metrics);
+        SimpleMessageHandlerRegistry handlerRegistry = new SimpleMessageHandlerRegistry();
+        handlerRegistry.setMetricsSink(metrics);
+
+        byte[] serialized = packetManager.toByteArray(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(1).build());
+        packetManager.parse(CodedInputStream.newInstance(serialized), handlerRegistry);
+        handlerRegistry.registerAll(this);
+        packetManager.parse(packetManager.build(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(2).build()), handlerRegistry);
+        packetManager.parse(CodedInputStream.newInstance(serialized), handlerRegistry);
+        packetManager.parse(packetManager.build(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(-1).build()), handlerRegistry);
+
+        StripedMetricsSink.Counters counters = metrics.getCounters(TestExtendingMessage.ExtendingMessage.getDescriptor());
+        Assert.assertNotNull("No metrics were recorded for ExtendingMessage", counters);
+        Assert.assertEquals("Wrong number of parsed messages", 3, counters.getParsed());
+        Assert.assertEquals("Wrong number of unhandled messages", 1, counters.getUnhandled());
+        Assert.assertEquals("Wrong number of handler invocations", 3, counters.getInvoked());
+        Assert.assertEquals("Wrong number of failed handler invocations", 1, counters.getFailed());
+        Assert.assertTrue("Maximum handler latency exceeds the total latency", counters.getMaxNanos() <= counters.getTotalNanos());
+    }
+
+    /**
+     * Test to verify that {@link SimplePacketManager#parse(com.google.protobuf.Message,
+     * tc.oc.protobuf.packet.MessageHandlerRegistry)} and {@link SimplePacketManager#parse(byte[], int, int,
+     * tc.oc.protobuf.packet.MessageHandlerRegistry)} both handle every element of a repeated extension, in order.
+     *
+     * @throws Exception If the repeated extension could not be declared or the serialized message could not be parsed.
+     */
+    @Test
+    public void repeatedExtensionParseTest() throws Exception {
+        // The test protocol has no repeated extension, so declare one of ExtendingMessage at runtime
+        DescriptorProtos.FileDescriptorProto file = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("test_repeated_extension.proto")
+                .setPackage("tc.oc.protobuf.packet.protocols")
+                .addDependency(TestGenericMessage.getDescriptor().getName())
+                .addDependency(TestExtendingMessage.getDescriptor().getName())
+                .addExtension(DescriptorProtos.FieldDescriptorProto.newBuilder()
+                        .setName("repeated_extending_message")
+                        .setNumber(17)
+                        .setLabel(DescriptorProtos.FieldDescriptorProto.Label.LABEL_REPEATED)
+                        .setType(DescriptorProtos.FieldDescriptorProto.Type.TYPE_MESSAGE)
+                        .setTypeName(".tc.oc.protobuf.packet.protocols.ExtendingMessage")
+                        .setExtendee(".tc.oc.protobuf.packet.protocols.GenericMessage"))
+                .build();
+        Descriptors.FieldDescriptor field = Descriptors.FileDescriptor.buildFrom(file, new Descriptors.FileDescriptor[]{TestGenericMessage.getDescriptor(), TestExtendingMessage.getDescriptor()}).getExtensions().get(0);
+        ExtensionRegistry registry = ExtensionRegistry.newInstance();
+        registry.add(field, TestExtendingMessage.ExtendingMessage.getDefaultInstance());
+        SimplePacketManager<TestGenericMessage.GenericMessage> packetManager = new SimplePacketManager<>(TestGenericMessage.GenericMessage.getDefaultInstance(), registry);
+        this.handlerRegistry = new SimpleMessageHandlerRegistry();
+        handlerRegistry.registerAll(this);
+
+        TestGenericMessage.GenericMessage.Builder builder = TestGenericMessage.GenericMessage.newBuilder();
+        for (int i = 1; i <= 3; i++) {
+            builder.addRepeatedField(field, TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(i).build());
+        }
+        TestGenericMessage.GenericMessage packet = builder.build();
+        List<Integer> expected = new ArrayList<>();
+        expected.add(1);
+        expected.add(2);
+        expected.add(3);
+
+        this.parsedInts.clear();
+        Assert.assertEquals("parse() handled the wrong number of extensions", 3, packetManager.parse(packet, this.handlerRegistry));
+        Assert.assertEquals("parse() handled the wrong repeated extensions", expected, this.parsedInts);
+
+        byte[] serialized = packet.toByteArray();
+        this.parsedInts.clear();
+        Assert.assertEquals("parse() handled the wrong number of serialized extensions", 3, packetManager.parse(serialized, 0, serialized.length, this.handlerRegistry));
+        Assert.assertEquals("parse() handled the wrong serialized repeated extensions", expected, this.parsedInts);
+    }
+
     /**
      * Handler used in {@link #handlerParseTest()} and {@link #handlerRunTest()}.
      *
      * @param message The message to parse.
-     * @throws HandlerException Currently never thrown.
+     * @throws HandlerException If the message has a negative value.
      */
     @Handler
     public void handle(TestExtendingMessage.ExtendingMessage message) throws HandlerException {
         this.handlerHasRun = true;
         this.parsedInt = message.getNumericalValue();
+        this.parsedInts.add(this.parsedInt);
+        if (this.parsedInt < 0) {
+            throw new HandlerException("Negative value " + this.parsedInt);
+        }
     }
 }
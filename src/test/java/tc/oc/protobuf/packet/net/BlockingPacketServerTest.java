@@ -0,0 +1,140 @@
+package tc.oc.protobuf.packet.net;
+
+import com.google.protobuf.ExtensionRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import tc.oc.protobuf.packet.Handler;
+import tc.oc.protobuf.packet.MessageListener;
+import tc.oc.protobuf.packet.PacketManager;
+import tc.oc.protobuf.packet.base.SimpleMessageHandlerRegistry;
+import tc.oc.protobuf.packet.base.SimplePacketManager;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+import tc.oc.protobuf.packet.protocols.TestGenericMessage;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test suite for {@link BlockingPacketServer} and {@link PacketConnection}.
+ */
+@RunWith(JUnit4.class)
+public class BlockingPacketServerTest implements MessageListener {
+    private static final int PACKETS = 10000;
+
+    private PacketManager<TestGenericMessage.GenericMessage> packetManager;
+    private BlockingPacketServer<TestGenericMessage.GenericMessage> server;
+    private CountDownLatch received;
+    private final AtomicLong receivedSum = new AtomicLong();
+
+    /**
+     * Called before any tests are invoked; starts a server on the loopback interface.
+     *
+     * @throws Exception If the server could not be started.
+     */
+    @Before
+    public void initialize() throws Exception {
+        ExtensionRegistry registry = ExtensionRegistry.newInstance();
+        TestExtendingMessage.registerAllExtensions(registry);
+        this.packetManager = new SimplePacketManager<>(TestGenericMessage.GenericMessage.getDefaultInstance(), registry);
+        SimpleMessageHandlerRegistry handlerRegistry = new SimpleMessageHandlerRegistry();
+        handlerRegistry.registerAll(this);
+        this.server = new BlockingPacketServer<>(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()), this.packetManager, handlerRegistry, Executors.defaultThreadFactory(), null);
+        this.server.start();
+    }
+
+    /**
+     * Called after each test; stops the server.
+     */
+    @After
+    public void shutdown() {
+        this.server.close();
+    }
+
+    /**
+     * Test to verify that packets sent by a {@link PacketConnection} are received and handled by the server, in order
+     * and intact.
+     *
+     * @throws Exception If the packets could not be sent.
+     */
+    @Test
+    public void loopbackTest() throws Exception {
+        this.received = new CountDownLatch(PACKETS);
+        Socket socket = new Socket(this.server.getServerSocket().getInetAddress(), this.server.getServerSocket().getLocalPort());
+        PacketConnection<TestGenericMessage.GenericMessage> client = new PacketConnection<>(socket, this.packetManager, new SimpleMessageHandlerRegistry(), null);
+        try {
+            long expectedSum = 0;
+            for (int i = 0; i < PACKETS; i++) {
+                client.send(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(i).build());
+                expectedSum += i;
+            }
+            Assert.assertTrue("server did not receive every packet", this.received.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals("server received corrupt packets", expectedSum, this.receivedSum.get());
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Test to verify that a connection whose thread could not be created is closed, and that the server keeps accepting
+     * other connections.
+     *
+     * @throws Exception If the packets could not be sent.
+     */
+    @Test
+    public void failedThreadTest() throws Exception {
+        this.received = new CountDownLatch(1);
+        final AtomicInteger threads = new AtomicInteger();
+        final ThreadFactory delegate = Executors.defaultThreadFactory();
+        SimpleMessageHandlerRegistry handlerRegistry = new SimpleMessageHandlerRegistry();
+        handlerRegistry.registerAll(this);
+        BlockingPacketServer<TestGenericMessage.GenericMessage> server = new BlockingPacketServer<>(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()), this.packetManager, handlerRegistry, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                // The first thread accepts connections; the thread of the first connection can not be created
+                return threads.getAndIncrement() == 1 ? null : delegate.newThread(runnable);
+            }
+        }, null);
+        server.start();
+        try {
+            Socket failing = new Socket(server.getServerSocket().getInetAddress(), server.getServerSocket().getLocalPort());
+            try {
+                failing.setSoTimeout(30000);
+                Assert.assertEquals("server did not close the connection without a thread", -1, failing.getInputStream().read());
+            } finally {
+                failing.close();
+            }
+            Socket socket = new Socket(server.getServerSocket().getInetAddress(), server.getServerSocket().getLocalPort());
+            PacketConnection<TestGenericMessage.GenericMessage> client = new PacketConnection<>(socket, this.packetManager, new SimpleMessageHandlerRegistry(), null);
+            try {
+                client.send(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(7).build());
+                Assert.assertTrue("server stopped accepting connections", this.received.await(30, TimeUnit.SECONDS));
+            } finally {
+                client.close();
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Handler for packets received by the server.
+     *
+     * @param message The message to handle.
+     */
+    @Handler
+    public void handle(TestExtendingMessage.ExtendingMessage message) {
+        this.receivedSum.addAndGet(message.getNumericalValue());
+        this.received.countDown();
+    }
+}
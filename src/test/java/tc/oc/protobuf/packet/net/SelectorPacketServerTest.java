@@ -0,0 +1,162 @@
+package tc.oc.protobuf.packet.net;
+
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.Message;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import tc.oc.protobuf.packet.BroadcastPacket;
+import tc.oc.protobuf.packet.Handler;
+import tc.oc.protobuf.packet.MessageHandler;
+import tc.oc.protobuf.packet.MessageListener;
+import tc.oc.protobuf.packet.PacketManager;
+import tc.oc.protobuf.packet.base.SimpleMessageHandlerRegistry;
+import tc.oc.protobuf.packet.base.SimplePacketManager;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+import tc.oc.protobuf.packet.protocols.TestGenericMessage;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Test suite for {@link SelectorPacketServer} and {@link ChannelPacketConnection}.
+ */
+@RunWith(JUnit4.class)
+public class SelectorPacketServerTest implements MessageListener {
+    private static final int PACKETS = 10000;
+
+    private PacketManager<TestGenericMessage.GenericMessage> packetManager;
+    private SelectorPacketServer<TestGenericMessage.GenericMessage> server;
+    private CountDownLatch received;
+    private final AtomicLong receivedSum = new AtomicLong();
+
+    /**
+     * Called before any tests are invoked; starts a server on the loopback interface.
+     *
+     * @throws Exception If the server could not be started.
+     */
+    @Before
+    public void initialize() throws Exception {
+        ExtensionRegistry registry = ExtensionRegistry.newInstance();
+        TestExtendingMessage.registerAllExtensions(registry);
+        this.packetManager = new SimplePacketManager<>(TestGenericMessage.GenericMessage.getDefaultInstance(), registry);
+        SimpleMessageHandlerRegistry handlerRegistry = new SimpleMessageHandlerRegistry();
+        handlerRegistry.registerAll(this);
+        handlerRegistry.register(TestExtendingMessage.ExtendingMessage.getDescriptor(), new MessageHandler() {
+            @Override
+            public void handle(Message msg) {
+                if (((TestExtendingMessage.ExtendingMessage) msg).getNumericalValue() < 0) {
+                    throw new IllegalStateException("Handler failed without a HandlerException");
+                }
+            }
+        });
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        this.server = new SelectorPacketServer<>(serverChannel, this.packetManager, handlerRegistry, null);
+        this.server.start(Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Called after each test; stops the server.
+     */
+    @After
+    public void shutdown() {
+        this.server.close();
+    }
+
+    /**
+     * Test to verify that packets sent by a {@link PacketConnection} are received and handled in order and intact by
+     * the server, and that packets and {@link BroadcastPacket}s queued on the server's {@link ChannelPacketConnection}
+     * are written back.
+     *
+     * @throws Exception If the packets could not be sent.
+     */
+    @Test
+    public void loopbackTest() throws Exception {
+        this.received = new CountDownLatch(PACKETS);
+        InetSocketAddress address = (InetSocketAddress) this.server.getServerChannel().getLocalAddress();
+        final CountDownLatch echoed = new CountDownLatch(PACKETS);
+        SimpleMessageHandlerRegistry clientRegistry = new SimpleMessageHandlerRegistry();
+        clientRegistry.registerAll(new MessageListener() {
+            @Handler
+            public void handle(TestExtendingMessage.ExtendingMessage message) {
+                echoed.countDown();
+            }
+        });
+        PacketConnection<TestGenericMessage.GenericMessage> client = new PacketConnection<>(new Socket(address.getAddress(), address.getPort()), this.packetManager, clientRegistry, null);
+        client.start(Executors.defaultThreadFactory());
+        try {
+            long expectedSum = 0;
+            for (int i = 0; i < PACKETS; i++) {
+                client.send(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(i).build());
+                expectedSum += i;
+            }
+            Assert.assertTrue("server did not receive every packet", this.received.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals("server received corrupt packets", expectedSum, this.receivedSum.get());
+
+            ChannelPacketConnection<TestGenericMessage.GenericMessage> connection = this.server.getConnections().iterator().next();
+            BroadcastPacket broadcast = BroadcastPacket.create(this.packetManager, TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(-1).build());
+            for (int i = 0; i < PACKETS; i++) {
+                if (i % 2 == 0) {
+                    connection.send(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(i).build());
+                } else {
+                    connection.send(broadcast);
+                }
+            }
+            Assert.assertTrue("client did not receive every packet", echoed.await(30, TimeUnit.SECONDS));
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Test to verify that a handler throwing a {@link RuntimeException} only closes the connection whose packet it was
+     * handling, and that the server keeps serving other connections.
+     *
+     * @throws Exception If the packets could not be sent.
+     */
+    @Test
+    public void failingHandlerTest() throws Exception {
+        this.received = new CountDownLatch(2);
+        InetSocketAddress address = (InetSocketAddress) this.server.getServerChannel().getLocalAddress();
+        PacketConnection<TestGenericMessage.GenericMessage> failing = new PacketConnection<>(new Socket(address.getAddress(), address.getPort()), this.packetManager, new SimpleMessageHandlerRegistry(), null);
+        PacketConnection<TestGenericMessage.GenericMessage> client = new PacketConnection<>(new Socket(address.getAddress(), address.getPort()), this.packetManager, new SimpleMessageHandlerRegistry(), null);
+        try {
+            failing.send(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(-1).build());
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (this.received.getCount() > 1 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            client.send(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(5).build());
+            Assert.assertTrue("server stopped serving other connections", this.received.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals("server received corrupt packets", 4, this.receivedSum.get());
+            while (this.server.getConnections().size() > 1 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals("server did not close only the failing connection", 1, this.server.getConnections().size());
+        } finally {
+            failing.close();
+            client.close();
+        }
+    }
+
+    /**
+     * Handler for packets received by the server.
+     *
+     * @param message The message to handle.
+     */
+    @Handler
+    public void handle(TestExtendingMessage.ExtendingMessage message) {
+        this.receivedSum.addAndGet(message.getNumericalValue());
+        this.received.countDown();
+    }
+}
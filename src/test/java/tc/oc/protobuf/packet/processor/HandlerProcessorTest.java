@@ -0,0 +1,115 @@
+package tc.oc.protobuf.packet.processor;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.protobuf.Descriptors.Descriptor;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import tc.oc.protobuf.packet.*;
+import tc.oc.protobuf.packet.base.SimpleMessageHandlerRegistry;
+import tc.oc.protobuf.packet.protocols.TestExtendingMessage;
+import tc.oc.protobuf.packet.protocols.TestGenericMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test suite for {@link HandlerProcessor}. This is the only test compiled with the processor; the other tests register
+ * their listeners by reflection.
+ */
+@RunWith(JUnit4.class)
+public class HandlerProcessorTest implements MessageListener {
+    private int extendingHandled;
+    private int genericHandled;
+
+    /**
+     * Test to verify that a {@link ListenerDispatcher} was generated for this listener, and that it creates working
+     * handlers.
+     *
+     * @throws Exception If the generated dispatcher could not be loaded.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void generatedDispatcherTest() throws Exception {
+        Class<?> dispatcherClass = Class.forName(HandlerProcessorTest.class.getName() + ListenerDispatcher.CLASS_SUFFIX);
+        ListenerDispatcher<HandlerProcessorTest> dispatcher = (ListenerDispatcher<HandlerProcessorTest>) dispatcherClass.getDeclaredConstructor().newInstance();
+        Multimap<Descriptor, MessageHandler> handlers = ArrayListMultimap.create();
+        dispatcher.createHandlers(this, handlers);
+        Assert.assertEquals("dispatcher created the wrong number of handlers", 2, handlers.size());
+
+        for (MessageHandler handler : handlers.get(TestExtendingMessage.ExtendingMessage.getDescriptor())) {
+            MethodMessageHandler methodHandler = (MethodMessageHandler) handler;
+            Assert.assertEquals("dispatcher resolved the wrong Handler annotation", methodHandler.getMethod().getAnnotation(Handler.class), methodHandler.getAnnotation());
+            handler.handle(TestExtendingMessage.ExtendingMessage.getDefaultInstance());
+        }
+        Assert.assertEquals("dispatcher did not create the ExtendingMessage handler", 1, this.extendingHandled);
+        Assert.assertEquals("dispatcher invoked the GenericMessage handler", 0, this.genericHandled);
+    }
+
+    /**
+     * Test to verify that a registry dispatches through the handlers of a generated dispatcher in order of {@link
+     * Handler#priority()}, skipping the handlers that {@link Handler#ignoreCancelled() ignore cancelled} messages once
+     * the {@link Dispatch} is cancelled.
+     *
+     * @throws Exception If the generated dispatcher could not be loaded.
+     */
+    @Test
+    public void generatedPriorityTest() throws Exception {
+        Assert.assertNotNull("no dispatcher was generated for the listener", Class.forName(PriorityListener.class.getName() + ListenerDispatcher.CLASS_SUFFIX));
+        SimpleMessageHandlerRegistry registry = new SimpleMessageHandlerRegistry();
+        PriorityListener listener = new PriorityListener();
+        registry.registerAll(listener);
+        Assert.assertEquals("handle() invoked the wrong number of handlers", 3, registry.handle(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(1).build()));
+        Assert.assertEquals("handle() invoked the handlers out of order", Arrays.asList("lowest", "normal", "high"), listener.invoked);
+
+        listener.invoked.clear();
+        Assert.assertEquals("handle() invoked the wrong number of handlers", 2, registry.handle(TestExtendingMessage.ExtendingMessage.newBuilder().setNumericalValue(-1).build()));
+        Assert.assertEquals("handle() did not skip the handler ignoring cancelled messages", Arrays.asList("lowest", "normal"), listener.invoked);
+    }
+
+    /**
+     * Handler for {@link TestExtendingMessage.ExtendingMessage}s.
+     *
+     * @param message The message to handle.
+     */
+    @Handler
+    public void handleExtending(TestExtendingMessage.ExtendingMessage message) {
+        this.extendingHandled++;
+    }
+
+    /**
+     * Handler for {@link TestGenericMessage.GenericMessage}s.
+     *
+     * @param message The message to handle.
+     */
+    @Handler
+    public void handleGeneric(TestGenericMessage.GenericMessage message) {
+        this.genericHandled++;
+    }
+
+    /**
+     * Listener with handlers of several priorities, one of which cancels messages with negative values.
+     */
+    public static class PriorityListener implements MessageListener {
+        private final List<String> invoked = new ArrayList<>();
+
+        @Handler(priority = HandlerPriority.HIGH, ignoreCancelled = true)
+        public void handleHigh(TestExtendingMessage.ExtendingMessage message) {
+            this.invoked.add("high");
+        }
+
+        @Handler
+        public void handleNormal(TestExtendingMessage.ExtendingMessage message) {
+            this.invoked.add("normal");
+        }
+
+        @Handler(priority = HandlerPriority.LOWEST)
+        public void handleLowest(TestExtendingMessage.ExtendingMessage message) {
+            this.invoked.add("lowest");
+            Dispatch.current().setCancelled(message.getNumericalValue() < 0);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package tc.oc.protobuf.packet.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test suite for {@link OrderedExecutor}.
+ */
+@RunWith(JUnit4.class)
+public class OrderedExecutorTest {
+    private static final int KEYS = 16;
+    private static final int TASKS_PER_KEY = 2000;
+
+    /**
+     * Test to verify that tasks with the same key run one at a time in submission order, and that no queues are left
+     * behind once every task has run.
+     *
+     * @throws Exception If the executor could not be shut down.
+     */
+    @Test
+    public void orderTest() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            OrderedExecutor<Integer> executor = new OrderedExecutor<>(pool);
+            final List<List<Integer>> results = new ArrayList<>();
+            for (int key = 0; key < KEYS; key++) {
+                results.add(Collections.synchronizedList(new ArrayList<Integer>()));
+            }
+            final CountDownLatch done = new CountDownLatch(KEYS * TASKS_PER_KEY);
+            for (int i = 0; i < TASKS_PER_KEY; i++) {
+                for (int key = 0; key < KEYS; key++) {
+                    final List<Integer> result = results.get(key);
+                    final int task = i;
+                    executor.execute(key, new Runnable() {
+                        @Override
+                        public void run() {
+                            result.add(task);
+                            done.countDown();
+                        }
+                    });
+                }
+            }
+            Assert.assertTrue("tasks did not complete", done.await(30, TimeUnit.SECONDS));
+
+            for (List<Integer> result : results) {
+                Assert.assertEquals("a task did not run exactly once", TASKS_PER_KEY, result.size());
+                for (int i = 0; i < TASKS_PER_KEY; i++) {
+                    Assert.assertEquals("tasks with the same key ran out of order", i, (int) result.get(i));
+                }
+            }
+            pool.shutdown();
+            Assert.assertTrue("executor did not terminate", pool.awaitTermination(30, TimeUnit.SECONDS));
+            Assert.assertEquals("queues were left behind", 0, executor.getPendingKeys());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}